@@ -0,0 +1,62 @@
+package cbo.risk.sms.config;
+
+import cbo.risk.sms.utils.BulkAuditContext;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.envers.boot.internal.EnversService;
+import org.hibernate.envers.event.spi.*;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+/**
+ * Registers the Envers listeners the way EnversIntegrator does, except that inserts of
+ * entity types suppressed through {@link BulkAuditContext} produce no audit row.
+ * Requires hibernate.envers.autoRegisterListeners=false (set in {@link EnversConfig}).
+ */
+public class BulkAwareEnversIntegrator implements Integrator {
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        EnversService enversService = serviceRegistry.getService(EnversService.class);
+        if (!enversService.isEnabled() || !enversService.getEntitiesConfigurations().hasAuditedEntities()) {
+            return;
+        }
+
+        EventListenerRegistry listenerRegistry = serviceRegistry.getService(EventListenerRegistry.class);
+        listenerRegistry.addDuplicationStrategy(EnversListenerDuplicationStrategy.INSTANCE);
+
+        listenerRegistry.appendListeners(EventType.POST_DELETE, new EnversPostDeleteEventListenerImpl(enversService));
+        listenerRegistry.appendListeners(EventType.POST_INSERT, new BulkAwarePostInsertEventListener(enversService));
+        listenerRegistry.appendListeners(EventType.PRE_UPDATE, new EnversPreUpdateEventListenerImpl(enversService));
+        listenerRegistry.appendListeners(EventType.POST_UPDATE, new EnversPostUpdateEventListenerImpl(enversService));
+        listenerRegistry.appendListeners(EventType.POST_COLLECTION_RECREATE,
+                new EnversPostCollectionRecreateEventListenerImpl(enversService));
+        listenerRegistry.appendListeners(EventType.PRE_COLLECTION_REMOVE,
+                new EnversPreCollectionRemoveEventListenerImpl(enversService));
+        listenerRegistry.appendListeners(EventType.PRE_COLLECTION_UPDATE,
+                new EnversPreCollectionUpdateEventListenerImpl(enversService));
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    private static class BulkAwarePostInsertEventListener extends EnversPostInsertEventListenerImpl {
+
+        BulkAwarePostInsertEventListener(EnversService enversService) {
+            super(enversService);
+        }
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            if (BulkAuditContext.isInsertSuppressed(event.getEntity().getClass())) {
+                return;
+            }
+            super.onPostInsert(event);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package cbo.risk.sms.config;
+
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class EnversConfig {
+
+    /**
+     * Replaces the default Envers listener registration with {@link BulkAwareEnversIntegrator}
+     */
+    @Bean
+    public HibernatePropertiesCustomizer bulkAwareEnversCustomizer() {
+        return hibernateProperties -> {
+            hibernateProperties.put("hibernate.envers.autoRegisterListeners", "false");
+            hibernateProperties.put("hibernate.integrator_provider",
+                    (IntegratorProvider) () -> List.of(new BulkAwareEnversIntegrator()));
+        };
+    }
+}
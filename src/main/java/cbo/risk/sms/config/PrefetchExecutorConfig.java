@@ -0,0 +1,31 @@
+package cbo.risk.sms.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class PrefetchExecutorConfig {
+
+    @Value("${sms.issuance.prefetch.pool-size:2}")
+    private int poolSize;
+
+    @Value("${sms.issuance.prefetch.queue-capacity:100}")
+    private int queueCapacity;
+
+    /**
+     * Small pool that refills the issuance prefetch buffers off the request thread. A refill
+     * that cannot be queued is simply skipped; the issue path falls back to its own query.
+     */
+    @Bean(name = "prefetchExecutor")
+    public ThreadPoolTaskExecutor prefetchExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("prefetch-");
+        executor.initialize();
+        return executor;
+    }
+}
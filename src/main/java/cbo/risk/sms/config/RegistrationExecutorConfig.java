@@ -0,0 +1,33 @@
+package cbo.risk.sms.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class RegistrationExecutorConfig {
+
+    @Value("${sms.registration.jobs.pool-size:2}")
+    private int poolSize;
+
+    @Value("${sms.registration.jobs.queue-capacity:20}")
+    private int queueCapacity;
+
+    /**
+     * Bounded pool for asynchronous batch registrations. When it is saturated new jobs
+     * are rejected instead of piling up, so large deliveries cannot exhaust the DB pool.
+     */
+    @Bean(name = "registrationExecutor")
+    public ThreadPoolTaskExecutor registrationExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("registration-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+}
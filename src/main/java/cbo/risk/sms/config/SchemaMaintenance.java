@@ -0,0 +1,104 @@
+package cbo.risk.sms.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.sql.DatabaseMetaData;
+import java.util.Map;
+
+/**
+ * One-off schema fixes that ddl-auto=update cannot do on its own.
+ * Runs after Hibernate has updated the schema and before the web server accepts requests.
+ */
+@Component
+public class SchemaMaintenance {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaMaintenance.class);
+
+    // Must match allocationSize of the entity @SequenceGenerator mappings
+    private static final int ALLOCATION_SIZE = 50;
+
+    // Sequence name -> table whose ids it generates
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "book_parent_seq", "book_parent",
+            "check_book_seq", "check_book",
+            "cpo_seq", "cpo",
+            "pass_book_seq", "pass_book",
+            "request_check_book_seq", "request_check_book",
+            "request_cpo_seq", "request_cpo",
+            "request_pass_book_seq", "request_pass_book"
+    );
+
+    // Table -> serial column that serial_prefix and serial_value are derived from
+    private static final Map<String, String> SERIAL_COLUMNS = Map.of(
+            "check_book", "start_serial_number",
+            "cpo", "serial_number",
+            "pass_book", "serial_number"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Injected only so that the schema update has finished before we run
+    public SchemaMaintenance(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void run() {
+        if (!isPostgres()) {
+            return;
+        }
+        alignSequences();
+        backfillSerialValues();
+    }
+
+    /**
+     * Tables created with IDENTITY ids already hold rows; move each pooled sequence
+     * past the highest existing id so Hibernate never hands out an id that is taken.
+     */
+    private void alignSequences() {
+        SEQUENCES.forEach((sequence, table) -> {
+            Long maxId = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+            Long lastValue = jdbcTemplate.queryForObject(
+                    "SELECT last_value FROM " + sequence, Long.class);
+            if (maxId != null && maxId > 0 && lastValue != null && lastValue <= maxId) {
+                jdbcTemplate.queryForObject("SELECT setval(?, ?)", Long.class,
+                        sequence, maxId + ALLOCATION_SIZE);
+                log.info("Moved sequence {} past max id {} of {}", sequence, maxId, table);
+            }
+        });
+    }
+
+    /**
+     * Rows registered before serial_prefix and serial_value existed get them filled in the
+     * same way the entities do: prefix is everything before the trailing digits, value is
+     * the digits, -1 when there are none or too many for a bigint.
+     */
+    private void backfillSerialValues() {
+        SERIAL_COLUMNS.forEach((table, column) -> {
+            int updated = jdbcTemplate.update(
+                    "UPDATE " + table + " SET "
+                            + "serial_prefix = regexp_replace(" + column + ", '[0-9]+$', ''), "
+                            + "serial_value = CASE WHEN length(substring(" + column + " from '[0-9]+$')) <= 18 "
+                            + "THEN CAST(substring(" + column + " from '[0-9]+$') AS bigint) ELSE -1 END "
+                            + "WHERE serial_value IS NULL");
+            if (updated > 0) {
+                log.info("Backfilled serial_prefix and serial_value of {} rows in {}", updated, table);
+            }
+        });
+    }
+
+    private boolean isPostgres() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            return metaData.getDatabaseProductName();
+        });
+        return product != null && product.toLowerCase().contains("postgres");
+    }
+}
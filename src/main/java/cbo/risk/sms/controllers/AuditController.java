@@ -0,0 +1,30 @@
+package cbo.risk.sms.controllers;
+
+import cbo.risk.sms.dtos.ItemRevisionDTO;
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.services.AuditHistoryService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/v1/audit")
+@RequiredArgsConstructor
+@Tag(name = "Audit History", description = "APIs for reading item audit history")
+public class AuditController {
+
+    private final AuditHistoryService auditHistoryService;
+
+    @GetMapping("/{itemType}/{id}/history")
+    @Operation(summary = "Get the revision history of a CheckBook, CPO or PassBook, including bulk registration")
+    public ResponseEntity<List<ItemRevisionDTO>> getItemHistory(
+            @Parameter(description = "CHECK_BOOK, CPO or PASS_BOOK") @PathVariable ParentBookType itemType,
+            @Parameter(description = "ID of the item") @PathVariable Long id) {
+        return ResponseEntity.ok(auditHistoryService.getItemHistory(itemType, id));
+    }
+}
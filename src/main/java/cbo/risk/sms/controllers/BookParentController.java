@@ -6,7 +6,11 @@ import cbo.risk.sms.dtos.BatchResponseDTO;
 import cbo.risk.sms.dtos.IssueRequestDTO;
 import cbo.risk.sms.dtos.ReturnRequestDTO;
 import cbo.risk.sms.models.BookParent;
+import cbo.risk.sms.enums.ParentBookType;
 import cbo.risk.sms.services.BookParentService;
+import cbo.risk.sms.services.IdempotencyService;
+import cbo.risk.sms.services.ManifestImportService;
+import cbo.risk.sms.services.RegistrationJobService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -15,8 +19,11 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -29,6 +36,15 @@ public class BookParentController {
 @Autowired
     private  BookParentService bookParentService;
 
+    @Autowired
+    private RegistrationJobService registrationJobService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private ManifestImportService manifestImportService;
+
     @PostMapping("/checkbooks/register")
     @Operation(summary = "Register a new batch of CheckBooks")
     @ApiResponses(value = {
@@ -37,31 +53,99 @@ public class BookParentController {
             @ApiResponse(responseCode = "409", description = "Serial numbers already exist")
     })
     public ResponseEntity<BatchResponseDTO> registerCheckBookBatch(
+            @Parameter(description = "Optional client key; a retry with the same key returns the original response")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Valid @RequestBody BatchRegistrationDTO registrationDTO) {
         System.out.println(registrationDTO.getParentBookType());
         System.out.println(registrationDTO.getCheckBookType());
-        BatchResponseDTO response = bookParentService.registerCheckBookBatch(registrationDTO);
+        BatchResponseDTO response = idempotencyService.execute(idempotencyKey, "checkbooks/register",
+                registrationDTO, () -> bookParentService.registerCheckBookBatch(registrationDTO));
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
     @PostMapping("/cpos/register")
     @Operation(summary = "Register a new batch of CPOs")
     public ResponseEntity<BatchResponseDTO> registerCpoBatch(
+            @Parameter(description = "Optional client key; a retry with the same key returns the original response")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Valid @RequestBody BatchRegistrationDTO registrationDTO) {
         System.out.println(registrationDTO);
-        BatchResponseDTO response = bookParentService.registerCpoBatch(registrationDTO);
+        BatchResponseDTO response = idempotencyService.execute(idempotencyKey, "cpos/register",
+                registrationDTO, () -> bookParentService.registerCpoBatch(registrationDTO));
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
     @PostMapping("/passbooks/register")
     @Operation(summary = "Register a new batch of PassBooks")
     public ResponseEntity<BatchResponseDTO> registerPassBookBatch(
+            @Parameter(description = "Optional client key; a retry with the same key returns the original response")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Valid @RequestBody BatchRegistrationDTO registrationDTO) {
         System.out.println(registrationDTO);
-        BatchResponseDTO response = bookParentService.registerPassBookBatch(registrationDTO);
+        BatchResponseDTO response = idempotencyService.execute(idempotencyKey, "passbooks/register",
+                registrationDTO, () -> bookParentService.registerPassBookBatch(registrationDTO));
         return ResponseEntity.status(HttpStatus.CREATED).body(response);
     }
 
+    @PostMapping("/preview")
+    @Operation(summary = "Preview a batch registration: item count, first/last serials and conflicts, without saving")
+    public ResponseEntity<BatchPreviewDTO> previewRegistration(
+            @Valid @RequestBody BatchRegistrationDTO registrationDTO) {
+        return ResponseEntity.ok(bookParentService.previewRegistration(registrationDTO));
+    }
+
+    @PostMapping("/checkbooks/register-async")
+    @Operation(summary = "Queue a CheckBook batch registration and return its job id")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Registration job queued"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data or job queue full")
+    })
+    public ResponseEntity<RegistrationJobDTO> registerCheckBookBatchAsync(
+            @Valid @RequestBody BatchRegistrationDTO registrationDTO) {
+        RegistrationJobDTO job = registrationJobService.submit(ParentBookType.CHECK_BOOK, registrationDTO);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    @PostMapping("/cpos/register-async")
+    @Operation(summary = "Queue a CPO batch registration and return its job id")
+    public ResponseEntity<RegistrationJobDTO> registerCpoBatchAsync(
+            @Valid @RequestBody BatchRegistrationDTO registrationDTO) {
+        RegistrationJobDTO job = registrationJobService.submit(ParentBookType.CPO, registrationDTO);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    @PostMapping("/passbooks/register-async")
+    @Operation(summary = "Queue a PassBook batch registration and return its job id")
+    public ResponseEntity<RegistrationJobDTO> registerPassBookBatchAsync(
+            @Valid @RequestBody BatchRegistrationDTO registrationDTO) {
+        RegistrationJobDTO job = registrationJobService.submit(ParentBookType.PASS_BOOK, registrationDTO);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+    }
+
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Register every batch listed in an XLSX delivery manifest")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Manifest read; see per-row results for failures"),
+            @ApiResponse(responseCode = "400", description = "File is not a readable XLSX manifest")
+    })
+    public ResponseEntity<ManifestImportResultDTO> importManifest(
+            @Parameter(description = "XLSX manifest, one batch per row under a header row")
+            @RequestParam("file") MultipartFile file,
+            @RequestParam String createdBy,
+            @RequestParam String createdById) {
+        return ResponseEntity.ok(manifestImportService.importManifest(file, createdBy, createdById));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    @Operation(summary = "Get progress of a registration job (rows written, rows/second, ETA, failure reason)")
+    public ResponseEntity<RegistrationJobDTO> getRegistrationJob(
+            @Parameter(description = "Job id returned by a register-async endpoint")
+            @PathVariable String jobId) {
+        return registrationJobService.findJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @PostMapping("/issue")
     @Operation(summary = "Issue a book to a user")
     @ApiResponses(value = {
@@ -117,6 +201,23 @@ public class BookParentController {
         return ResponseEntity.ok(parents);
     }
 
+    @GetMapping("/scroll")
+    @Operation(summary = "Get all book parent batches with keyset pagination",
+            description = "Pass nextCursor from the previous page as cursor; omit it for the first page")
+    public ResponseEntity<KeysetPageDTO<BookParent>> scrollBookParents(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(bookParentService.scroll(cursor, size));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Stream all book parent batches as JSON",
+            description = "Same content as the full listing, written while it is read from the database")
+    public ResponseEntity<StreamingResponseBody> streamBookParents() {
+        StreamingResponseBody body = bookParentService::streamAll;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     @GetMapping("/branch/{branchId}")
     @Operation(summary = "Get all book parent batches by branch")
     public ResponseEntity<List<BookParent>> getBookParentsByBranch(
@@ -125,6 +226,15 @@ public class BookParentController {
         return ResponseEntity.ok(parents);
     }
 
+    @GetMapping("/branch/{branchId}/scroll")
+    @Operation(summary = "Get book parent batches by branch with keyset pagination")
+    public ResponseEntity<KeysetPageDTO<BookParent>> scrollBookParentsByBranch(
+            @PathVariable String branchId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(bookParentService.scrollByBranch(branchId, cursor, size));
+    }
+
     @GetMapping("/serial/{serialNumber}")
     @Operation(summary = "Find book parent by serial number")
     public ResponseEntity<BatchResponseDTO> getParentBySerial(
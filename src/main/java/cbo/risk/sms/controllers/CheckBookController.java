@@ -1,18 +1,24 @@
 package cbo.risk.sms.controllers;
 
 import cbo.risk.sms.dtos.*;
+import cbo.risk.sms.enums.ParentBookType;
 import cbo.risk.sms.models.RequestCheckBook;
 import cbo.risk.sms.services.CheckBookService;
+import cbo.risk.sms.services.IssuanceLaneService;
 import cbo.risk.sms.services.impl.CheckBookServiceImpl;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.hibernate.envers.Audited;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Path;
 import javax.validation.Valid;
@@ -24,6 +30,9 @@ import java.util.List;
 public class CheckBookController {
     private final CheckBookServiceImpl checkBookService;
 
+    @Autowired
+    private IssuanceLaneService issuanceLaneService;
+
     public CheckBookController(CheckBookServiceImpl checkBookService) {
         this.checkBookService = checkBookService;
     }
@@ -66,6 +75,23 @@ public class CheckBookController {
         return ResponseEntity.ok(checkBooks);
     }
 
+    @GetMapping("/scroll")
+    @Operation(summary = "Get all CheckBooks with keyset pagination",
+            description = "Pass nextCursor from the previous page as cursor; omit it for the first page")
+    public ResponseEntity<KeysetPageDTO<CheckBookDTO>> scrollCheckBooks(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(checkBookService.scroll(cursor, size));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Stream all CheckBooks as JSON",
+            description = "Same content as the full listing, written while it is read from the database")
+    public ResponseEntity<StreamingResponseBody> streamCheckBooks() {
+        StreamingResponseBody body = checkBookService::streamAll;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     @GetMapping("/branch/{branchId}")
     @Operation(summary = "Get CheckBooks by branch")
     public ResponseEntity<List<CheckBookDTO>> getCheckBooksByBranch(@PathVariable String branchId) {
@@ -73,6 +99,17 @@ public class CheckBookController {
         return ResponseEntity.ok(checkBooks);
     }
 
+    @GetMapping("/branch/{branchId}/scroll")
+    @Operation(summary = "Get CheckBooks by branch with keyset pagination",
+            description = "status is optional: available, issued or returned")
+    public ResponseEntity<KeysetPageDTO<CheckBookDTO>> scrollCheckBooksByBranch(
+            @PathVariable String branchId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(checkBookService.scrollByBranch(branchId, status, cursor, size));
+    }
+
     @GetMapping("/branch/{branchId}/available")
     @Operation(summary = "Get available CheckBooks by branch")
     public ResponseEntity<List<CheckBookDTO>> getAvailableCheckBooksByBranch(@PathVariable String branchId) {
@@ -96,6 +133,15 @@ public class CheckBookController {
         return ResponseEntity.ok(checkBooks);
     }
 
+    @GetMapping("/parent/{parentId}/scroll")
+    @Operation(summary = "Get CheckBooks by parent batch in serial order with keyset pagination")
+    public ResponseEntity<KeysetPageDTO<CheckBookDTO>> scrollCheckBooksByParent(
+            @PathVariable Long parentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(checkBookService.scrollByParent(parentId, cursor, size));
+    }
+
     @PutMapping("/{id}")
     @Operation(summary = "Update CheckBook")
     public ResponseEntity<CheckBookDTO> updateCheckBook(
@@ -119,7 +165,21 @@ public class CheckBookController {
     public ResponseEntity<ResponseDTO<RequestCheckBookDTO>> issueCheckBook(
             @RequestBody RequestCheckBookDTO requestCheckBookDTO) {
         System.out.println(requestCheckBookDTO);
-        ResponseDTO<RequestCheckBookDTO> issued = checkBookService.issueAvailableCheckBook(requestCheckBookDTO);
+        ResponseDTO<RequestCheckBookDTO> issued = issuanceLaneService.issue(requestCheckBookDTO.getBranchId(),
+                ParentBookType.CHECK_BOOK, requestCheckBookDTO.getCheckBookLeaveType(),
+                () -> checkBookService.issueAvailableCheckBook(requestCheckBookDTO));
+        return ResponseEntity.ok(issued);
+    }
+
+    @PostMapping("/issue/bulk")
+    @Operation(summary = "Issue several consecutive CheckBooks to one customer in a single transaction")
+    public ResponseEntity<ResponseDTO<List<RequestCheckBookDTO>>> issueBulk(
+            @Parameter(description = "Number of CheckBooks to issue")
+            @RequestParam int quantity,
+            @RequestBody RequestCheckBookDTO requestCheckBookDTO) {
+        ResponseDTO<List<RequestCheckBookDTO>> issued = issuanceLaneService.issue(requestCheckBookDTO.getBranchId(),
+                ParentBookType.CHECK_BOOK, requestCheckBookDTO.getCheckBookLeaveType(),
+                () -> checkBookService.issueAvailableCheckBooks(requestCheckBookDTO, quantity));
         return ResponseEntity.ok(issued);
     }
 
@@ -134,6 +194,31 @@ public class CheckBookController {
         return ResponseEntity.ok(returned);
     }
 
+    @PostMapping("/reserve")
+    @Operation(summary = "Reserve the next CheckBook for a teller until it is confirmed or the hold expires")
+    public ResponseEntity<ResponseDTO<CheckBookDTO>> reserveCheckBook(
+            @RequestBody RequestCheckBookDTO requestCheckBookDTO) {
+        ResponseDTO<CheckBookDTO> reserved = issuanceLaneService.issue(requestCheckBookDTO.getBranchId(),
+                ParentBookType.CHECK_BOOK, requestCheckBookDTO.getCheckBookLeaveType(),
+                () -> checkBookService.reserveAvailableCheckBook(requestCheckBookDTO));
+        return ResponseEntity.ok(reserved);
+    }
+
+    @PostMapping("/{id}/confirm")
+    @Operation(summary = "Issue a CheckBook reserved by the same teller")
+    public ResponseEntity<ResponseDTO<RequestCheckBookDTO>> confirmCheckBook(
+            @PathVariable Long id,
+            @RequestBody RequestCheckBookDTO requestCheckBookDTO) {
+        return ResponseEntity.ok(checkBookService.confirmCheckBookReservation(id, requestCheckBookDTO));
+    }
+
+    @PostMapping("/receive/bulk")
+    @Operation(summary = "Receive many issued CheckBooks at once by their request ids")
+    public ResponseEntity<ResponseDTO<List<Long>>> receiveBulk(
+            @Valid @RequestBody BulkReceiveDTO receive) {
+        return ResponseEntity.ok(checkBookService.receiveCheckBooks(receive));
+    }
+
     @PostMapping("/{id}/receive")
     @Operation(summary = "Receive a CheckBook")
     public ResponseEntity<RequestCheckBookDTO> receiveCheckBook(
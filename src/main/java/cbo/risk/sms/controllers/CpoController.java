@@ -1,17 +1,22 @@
 package cbo.risk.sms.controllers;
 
 import cbo.risk.sms.dtos.*;
+import cbo.risk.sms.enums.ParentBookType;
 import cbo.risk.sms.models.RequestCpo;
 import cbo.risk.sms.services.CpoService;
+import cbo.risk.sms.services.IssuanceLaneService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -24,6 +29,9 @@ public class CpoController {
 @Autowired
     private  CpoService cpoService;
 
+    @Autowired
+    private IssuanceLaneService issuanceLaneService;
+
     @PostMapping
     @Operation(summary = "Create a new CPO")
     public ResponseEntity<CpoDTO> createCpo(@Valid @RequestBody CpoCreateDTO createDTO) {
@@ -61,6 +69,23 @@ public class CpoController {
         return ResponseEntity.ok(cpos);
     }
 
+    @GetMapping("/scroll")
+    @Operation(summary = "Get all CPOs with keyset pagination",
+            description = "Pass nextCursor from the previous page as cursor; omit it for the first page")
+    public ResponseEntity<KeysetPageDTO<CpoDTO>> scrollCpos(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(cpoService.scroll(cursor, size));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Stream all CPOs as JSON",
+            description = "Same content as the full listing, written while it is read from the database")
+    public ResponseEntity<StreamingResponseBody> streamCpos() {
+        StreamingResponseBody body = cpoService::streamAll;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     @GetMapping("/branch/{branchId}")
     @Operation(summary = "Get CPOs by branch")
     public ResponseEntity<List<CpoDTO>> getCposByBranch(@PathVariable String branchId) {
@@ -68,6 +93,17 @@ public class CpoController {
         return ResponseEntity.ok(cpos);
     }
 
+    @GetMapping("/branch/{branchId}/scroll")
+    @Operation(summary = "Get CPOs by branch with keyset pagination",
+            description = "status is optional: available, issued or returned")
+    public ResponseEntity<KeysetPageDTO<CpoDTO>> scrollCposByBranch(
+            @PathVariable String branchId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(cpoService.scrollByBranch(branchId, status, cursor, size));
+    }
+
     @GetMapping("/branch/{branchId}/available")
     @Operation(summary = "Get available CPOs by branch")
     public ResponseEntity<List<CpoDTO>> getAvailableCposByBranch(@PathVariable String branchId) {
@@ -89,6 +125,15 @@ public class CpoController {
         return ResponseEntity.ok(cpos);
     }
 
+    @GetMapping("/parent/{parentId}/scroll")
+    @Operation(summary = "Get CPOs by parent batch in serial order with keyset pagination")
+    public ResponseEntity<KeysetPageDTO<CpoDTO>> scrollCposByParent(
+            @PathVariable Long parentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(cpoService.scrollByParent(parentId, cursor, size));
+    }
+
     @PutMapping("/{id}")
     @Operation(summary = "Update CPO")
     public ResponseEntity<CpoDTO> updateCpo(
@@ -112,7 +157,19 @@ public class CpoController {
     public ResponseEntity<ResponseDTO<RequestCpoDTO>> issueCheckBook(
             @RequestBody RequestCpoDTO requestCpoDTO) {
         System.out.println(requestCpoDTO);
-        ResponseDTO<RequestCpoDTO> issued = cpoService.issueAvailableCpo(requestCpoDTO);
+        ResponseDTO<RequestCpoDTO> issued = issuanceLaneService.issue(requestCpoDTO.getBranchId(),
+                ParentBookType.CPO, null, () -> cpoService.issueAvailableCpo(requestCpoDTO));
+        return ResponseEntity.ok(issued);
+    }
+
+    @PostMapping("/issue/bulk")
+    @Operation(summary = "Issue several consecutive CPOs to one customer in a single transaction")
+    public ResponseEntity<ResponseDTO<List<RequestCpoDTO>>> issueBulk(
+            @Parameter(description = "Number of CPOs to issue")
+            @RequestParam int quantity,
+            @RequestBody RequestCpoDTO requestCpoDTO) {
+        ResponseDTO<List<RequestCpoDTO>> issued = issuanceLaneService.issue(requestCpoDTO.getBranchId(),
+                ParentBookType.CPO, null, () -> cpoService.issueAvailableCpos(requestCpoDTO, quantity));
         return ResponseEntity.ok(issued);
     }
 
@@ -125,6 +182,31 @@ public class CpoController {
         return ResponseEntity.ok(returned);
     }
 
+    @PostMapping("/reserve")
+    @Operation(summary = "Reserve the next CPO for a teller until it is confirmed or the hold expires")
+    public ResponseEntity<ResponseDTO<CpoDTO>> reserveCpo(
+            @RequestBody RequestCpoDTO requestCpoDTO) {
+        ResponseDTO<CpoDTO> reserved = issuanceLaneService.issue(requestCpoDTO.getBranchId(),
+                ParentBookType.CPO, null,
+                () -> cpoService.reserveAvailableCpo(requestCpoDTO));
+        return ResponseEntity.ok(reserved);
+    }
+
+    @PostMapping("/{id}/confirm")
+    @Operation(summary = "Issue a CPO reserved by the same teller")
+    public ResponseEntity<ResponseDTO<RequestCpoDTO>> confirmCpo(
+            @PathVariable Long id,
+            @RequestBody RequestCpoDTO requestCpoDTO) {
+        return ResponseEntity.ok(cpoService.confirmCpoReservation(id, requestCpoDTO));
+    }
+
+    @PostMapping("/receive/bulk")
+    @Operation(summary = "Receive many issued CPOs at once by their request ids")
+    public ResponseEntity<ResponseDTO<List<Long>>> receiveBulk(
+            @Valid @RequestBody BulkReceiveDTO receive) {
+        return ResponseEntity.ok(cpoService.receiveCpos(receive));
+    }
+
     @PostMapping("/{id}/receive")
     @Operation(summary = "Receive a CPO")
     public ResponseEntity<CpoDTO> receiveCpo(
@@ -1,19 +1,24 @@
 package cbo.risk.sms.controllers;
 
 import cbo.risk.sms.dtos.*;
+import cbo.risk.sms.enums.ParentBookType;
 import cbo.risk.sms.enums.PassBookCategory;
 import cbo.risk.sms.enums.PassBookType;
 import cbo.risk.sms.models.RequestPassBook;
+import cbo.risk.sms.services.IssuanceLaneService;
 import cbo.risk.sms.services.PassBookService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -27,6 +32,9 @@ public class PassBookController {
 @Autowired
     private  PassBookService passBookService;
 
+    @Autowired
+    private IssuanceLaneService issuanceLaneService;
+
     @PostMapping
     @Operation(summary = "Create a new PassBook")
     public ResponseEntity<PassBookDTO> createPassBook(
@@ -65,6 +73,23 @@ public class PassBookController {
         return ResponseEntity.ok(passBooks);
     }
 
+    @GetMapping("/scroll")
+    @Operation(summary = "Get all PassBooks with keyset pagination",
+            description = "Pass nextCursor from the previous page as cursor; omit it for the first page")
+    public ResponseEntity<KeysetPageDTO<PassBookDTO>> scrollPassBooks(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(passBookService.scroll(cursor, size));
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Stream all PassBooks as JSON",
+            description = "Same content as the full listing, written while it is read from the database")
+    public ResponseEntity<StreamingResponseBody> streamPassBooks() {
+        StreamingResponseBody body = passBookService::streamAll;
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     @GetMapping("/branch/{branchId}")
     @Operation(summary = "Get PassBooks by branch")
     public ResponseEntity<List<PassBookDTO>> getPassBooksByBranch(@PathVariable String branchId) {
@@ -72,6 +97,17 @@ public class PassBookController {
         return ResponseEntity.ok(passBooks);
     }
 
+    @GetMapping("/branch/{branchId}/scroll")
+    @Operation(summary = "Get PassBooks by branch with keyset pagination",
+            description = "status is optional: available, issued or returned")
+    public ResponseEntity<KeysetPageDTO<PassBookDTO>> scrollPassBooksByBranch(
+            @PathVariable String branchId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(passBookService.scrollByBranch(branchId, status, cursor, size));
+    }
+
     @GetMapping("/branch/{branchId}/available")
     @Operation(summary = "Get available PassBooks by branch")
     public ResponseEntity<List<PassBookDTO>> getAvailablePassBooksByBranch(@PathVariable String branchId) {
@@ -93,6 +129,15 @@ public class PassBookController {
         return ResponseEntity.ok(passBooks);
     }
 
+    @GetMapping("/parent/{parentId}/scroll")
+    @Operation(summary = "Get PassBooks by parent batch in serial order with keyset pagination")
+    public ResponseEntity<KeysetPageDTO<PassBookDTO>> scrollPassBooksByParent(
+            @PathVariable Long parentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        return ResponseEntity.ok(passBookService.scrollByParent(parentId, cursor, size));
+    }
+
     @PutMapping("/{id}")
     @Operation(summary = "Update PassBook")
     public ResponseEntity<PassBookDTO> updatePassBook(
@@ -124,9 +169,49 @@ public class PassBookController {
     public ResponseEntity<ResponseDTO<RequestPassBookDTO>> issueCheckBook(
             @RequestBody RequestPassBookDTO requestPassBookDTO) {
         System.out.println(requestPassBookDTO);
-        ResponseDTO<RequestPassBookDTO> issued = passBookService.issueAvailablePassBook(requestPassBookDTO);
+        ResponseDTO<RequestPassBookDTO> issued = issuanceLaneService.issue(requestPassBookDTO.getBranchId(),
+                ParentBookType.PASS_BOOK, requestPassBookDTO.getPassBookType(),
+                () -> passBookService.issueAvailablePassBook(requestPassBookDTO));
+        return ResponseEntity.ok(issued);
+    }
+
+    @PostMapping("/issue/bulk")
+    @Operation(summary = "Issue several consecutive PassBooks to one customer in a single transaction")
+    public ResponseEntity<ResponseDTO<List<RequestPassBookDTO>>> issueBulk(
+            @Parameter(description = "Number of PassBooks to issue")
+            @RequestParam int quantity,
+            @RequestBody RequestPassBookDTO requestPassBookDTO) {
+        ResponseDTO<List<RequestPassBookDTO>> issued = issuanceLaneService.issue(requestPassBookDTO.getBranchId(),
+                ParentBookType.PASS_BOOK, requestPassBookDTO.getPassBookType(),
+                () -> passBookService.issueAvailablePassBooks(requestPassBookDTO, quantity));
         return ResponseEntity.ok(issued);
     }
+
+    @PostMapping("/reserve")
+    @Operation(summary = "Reserve the next PassBook for a teller until it is confirmed or the hold expires")
+    public ResponseEntity<ResponseDTO<PassBookDTO>> reservePassBook(
+            @RequestBody RequestPassBookDTO requestPassBookDTO) {
+        ResponseDTO<PassBookDTO> reserved = issuanceLaneService.issue(requestPassBookDTO.getBranchId(),
+                ParentBookType.PASS_BOOK, requestPassBookDTO.getPassBookType(),
+                () -> passBookService.reserveAvailablePassBook(requestPassBookDTO));
+        return ResponseEntity.ok(reserved);
+    }
+
+    @PostMapping("/{id}/confirm")
+    @Operation(summary = "Issue a PassBook reserved by the same teller")
+    public ResponseEntity<ResponseDTO<RequestPassBookDTO>> confirmPassBook(
+            @PathVariable Long id,
+            @RequestBody RequestPassBookDTO requestPassBookDTO) {
+        return ResponseEntity.ok(passBookService.confirmPassBookReservation(id, requestPassBookDTO));
+    }
+
+    @PostMapping("/receive/bulk")
+    @Operation(summary = "Receive many issued PassBooks at once by their request ids")
+    public ResponseEntity<ResponseDTO<List<Long>>> receiveBulk(
+            @Valid @RequestBody BulkReceiveDTO receive) {
+        return ResponseEntity.ok(passBookService.receivePassBooks(receive));
+    }
+
     @PostMapping("/{id}/receive")
     @Operation(summary = "Receive a Pass book")
     public ResponseEntity<RequestPassBookDTO> receivePassBook(
@@ -0,0 +1,26 @@
+package cbo.risk.sms.dtos;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BatchPreviewDTO {
+    private String parentBookType;
+    private String startSerial;
+    private String endSerial;
+    private String serialPrefix;
+    private long totalSerials;
+    private int serialsPerItem;      // leaves per CheckBook, 1 for CPO and PassBook
+    private long itemsToCreate;
+    private long leftoverSerials;    // serials that do not fill a whole CheckBook
+    private String firstItemStartSerial;
+    private String firstItemEndSerial;
+    private String lastItemStartSerial;
+    private String lastItemEndSerial;
+    private String storageMode;
+    private List<String> conflicts = new ArrayList<>();
+    private List<String> problems = new ArrayList<>();
+    private boolean registrable;
+}
@@ -54,6 +54,12 @@ public class BatchRegistrationDTO {
 
     private String lastUpdatedById;
 
+    // CPO and PassBook only; null means MATERIALIZED
+    private StorageMode storageMode;
+
+    // Load children with PostgreSQL COPY instead of JPA inserts (large batches)
+    private boolean bulkLoad;
+
 
 
 
@@ -19,6 +19,7 @@ public class BatchResponseDTO {
     private int available;
     private String message;
     private int childrenCreated;
+    private String storageMode;
     private String parentBookType;
 
     private String branchId;
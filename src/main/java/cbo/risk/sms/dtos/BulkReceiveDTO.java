@@ -0,0 +1,20 @@
+package cbo.risk.sms.dtos;
+
+import lombok.Data;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+
+@Data
+public class BulkReceiveDTO {
+
+    @NotEmpty(message = "At least one request id is required")
+    private List<Long> requestIds;
+
+    @NotBlank(message = "Received by is required")
+    private String receivedBy;
+
+    @NotBlank(message = "Received by ID is required")
+    private String receivedById;
+}
@@ -39,5 +39,9 @@ public class CheckBookDTO extends BaseStockDTO {
     private String receivedById;
     private LocalDateTime issuedDate;
     private LocalDateTime returnedDate;
+
+    // Set while the CheckBook is reserved and waiting for confirmation
+    private LocalDateTime heldUntil;
+    private String heldById;
 }
 
@@ -33,5 +33,9 @@ public class CpoDTO extends BaseStockDTO {
     private Integer parentNumOfPad;
     private Integer parentUsed;
     private Integer parentAvailable;
+
+    // Set while the CPO is reserved and waiting for confirmation
+    private LocalDateTime heldUntil;
+    private String heldById;
 }
 
@@ -0,0 +1,26 @@
+package cbo.risk.sms.dtos;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class ItemRevisionDTO {
+    private int revision;
+    private LocalDateTime revisionDate;
+    private String revisionType;   // ADD, MOD, DEL
+    // ITEM for a row in the item's _aud table, BULK_REGISTRATION when rebuilt from the batch audit
+    private String source;
+
+    private Long itemId;
+    private Long bookParentId;
+    private String serialNumber;       // start serial for checkbooks
+    private String endSerialNumber;    // checkbooks only
+    private String branchId;
+    private LocalDateTime issuedDate;
+    private LocalDateTime receivedDate;
+    private LocalDateTime returnedDate;
+    private String issuedBy;
+    private String receivedBy;
+    private String lastUpdatedBy;
+}
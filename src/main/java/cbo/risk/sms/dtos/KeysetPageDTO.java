@@ -0,0 +1,17 @@
+package cbo.risk.sms.dtos;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing. Pass nextCursor back as the cursor parameter to
+ * get the page after it; it is null on the last page.
+ */
+@Data
+public class KeysetPageDTO<T> {
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    private String nextCursor;
+}
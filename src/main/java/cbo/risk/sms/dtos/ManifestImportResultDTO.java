@@ -0,0 +1,25 @@
+package cbo.risk.sms.dtos;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ManifestImportResultDTO {
+    private String fileName;
+    private int totalRows;
+    private int registered;
+    private int failed;
+    private List<ManifestRowResultDTO> results = new ArrayList<>();
+
+    public void addResult(ManifestRowResultDTO result) {
+        results.add(result);
+        totalRows++;
+        if (result.isSuccess()) {
+            registered++;
+        } else {
+            failed++;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package cbo.risk.sms.dtos;
+
+import lombok.Data;
+
+@Data
+public class ManifestRowResultDTO {
+    private int rowNumber;          // 1-based, as shown in Excel
+    private String parentBookType;
+    private String startSerial;
+    private String endSerial;
+    private boolean success;
+    private Long parentId;
+    private int childrenCreated;
+    private String message;
+}
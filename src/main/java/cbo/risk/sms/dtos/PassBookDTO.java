@@ -43,5 +43,8 @@ public class PassBookDTO extends BaseStockDTO {
     private Integer parentUsed;
     private Integer parentAvailable;
 
+    // Set while the PassBook is reserved and waiting for confirmation
+    private LocalDateTime heldUntil;
+    private String heldById;
 }
 
@@ -0,0 +1,29 @@
+package cbo.risk.sms.dtos;
+
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.enums.RegistrationJobStatus;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class RegistrationJobDTO {
+    private String jobId;
+    private ParentBookType parentBookType;
+    private RegistrationJobStatus status;
+    private String startSerial;
+    private String endSerial;
+
+    private long totalRows;
+    private long rowsWritten;
+    private double rowsPerSecond;
+    // Estimated seconds left, null until the job has made progress
+    private Long etaSeconds;
+
+    private LocalDateTime submittedAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+
+    private String failureReason;
+    private BatchResponseDTO result;
+}
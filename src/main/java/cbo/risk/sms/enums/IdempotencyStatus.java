@@ -0,0 +1,5 @@
+package cbo.risk.sms.enums;
+
+public enum IdempotencyStatus {
+    IN_PROGRESS, COMPLETED
+}
@@ -0,0 +1,5 @@
+package cbo.risk.sms.enums;
+
+public enum RegistrationJobStatus {
+    QUEUED, RUNNING, COMPLETED, FAILED
+}
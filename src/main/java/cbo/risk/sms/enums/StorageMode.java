@@ -0,0 +1,8 @@
+package cbo.risk.sms.enums;
+
+public enum StorageMode {
+    // One CPO/PassBook row per serial, created at registration
+    MATERIALIZED,
+    // Rows are created only when an item is issued; the parent tracks issued positions
+    COMPRESSED
+}
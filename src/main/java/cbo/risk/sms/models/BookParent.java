@@ -3,10 +3,13 @@ package cbo.risk.sms.models;
 import cbo.risk.sms.enums.CheckBookLeaveType;
 import cbo.risk.sms.enums.CheckBookType;
 import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.enums.StorageMode;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.UpdateTimestamp;
 import org.hibernate.envers.Audited;
+import org.hibernate.envers.NotAudited;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
@@ -16,11 +19,14 @@ import java.time.LocalDateTime;
 @Entity
 @Data
 @Audited
+// Only changed columns are written, so flushing a loaded parent never overwrites used (see adjustUsed)
+@DynamicUpdate
 
 public class BookParent {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_parent_seq")
+    @SequenceGenerator(name = "book_parent_seq", sequenceName = "book_parent_seq", allocationSize = 50)
     private Long id;
 
     @NotBlank
@@ -44,6 +50,9 @@ private boolean finished = false;
     @Column(name = "BRANCH_ID")
     private String branchId;
 private Long lastIssuedChild;
+    // Offset of the next item to issue: serial offset for CPO and PassBook, checkbook index for CheckBook.
+    // Everything before it has been issued. null on batches registered before the cursor existed.
+    private Integer nextIssueOffset;
 private CheckBookLeaveType checkLeaveType;
 private String passCheckType;
 private String passBookType;
@@ -81,8 +90,56 @@ private String passBookType;
     // Optional: For easier querying
     private LocalDateTime batchReceivedDate;
 
+    // null on batches registered before storage modes existed, which are materialized
+    @Enumerated(EnumType.STRING)
+    private StorageMode storageMode;
+
+    // COMPRESSED batches only: bit i is set once the serial at offset i has been issued.
+    // Little-endian bit order, as read by BitSet.valueOf and PostgreSQL get_bit/set_bit.
+    @NotAudited
+    private byte[] issuedPositions;
+
     // Helper method
     public int getAvailablePads() {
         return numOfPad - used;
     }
+
+    public boolean isCompressed() {
+        return storageMode == StorageMode.COMPRESSED;
+    }
+
+    public int issueCursor() {
+        return nextIssueOffset != null ? nextIssueOffset : 0;
+    }
+
+    // Moves the cursor past an issued item; the batch is finished once the cursor passes the last one
+    public void advanceIssueCursor(long issuedOffset, Long childId) {
+        nextIssueOffset = Math.toIntExact(Math.max(issueCursor(), issuedOffset + 1));
+        lastIssuedChild = childId;
+        if (nextIssueOffset >= numOfPad) {
+            finished = true;
+        }
+    }
+
+    // Offset of the first serial not yet issued, or -1 when every position is taken.
+    // Scans from the cursor, so each call only looks at positions issued since the last one.
+    public int nextUnissuedOffset() {
+        for (int offset = issueCursor(); offset < numOfPad; offset++) {
+            if (!isIssued(offset)) {
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    public boolean isIssued(int offset) {
+        return (issuedPositions[offset >> 3] & (1 << (offset & 7))) != 0;
+    }
+
+    public void markIssued(int offset) {
+        // Copy so Hibernate sees a new array and writes the column
+        byte[] positions = issuedPositions.clone();
+        positions[offset >> 3] |= (byte) (1 << (offset & 7));
+        issuedPositions = positions;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package cbo.risk.sms.models;
+
+import cbo.risk.sms.enums.ParentBookType;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * One audit entry per registered batch, standing in for the per-item ADD rows that
+ * bulk registration no longer writes to the *_aud tables.
+ */
+@Entity
+@Data
+@Table(indexes = @Index(name = "idx_bulk_registration_audit_parent", columnList = "book_parent_id"))
+public class BulkRegistrationAudit {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Envers revision (revinfo.rev) of the registration transaction
+    @Column(nullable = false)
+    private int rev;
+
+    @Column(name = "book_parent_id", nullable = false)
+    private Long bookParentId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ParentBookType itemType;
+
+    @Column(nullable = false)
+    private String startSerial;
+
+    @Column(nullable = false)
+    private String endSerial;
+
+    // Serials per item: leaves per checkbook, 1 for CPOs and PassBooks
+    private int serialsPerItem;
+
+    // Items written at registration (0 for compressed batches)
+    private int itemCount;
+
+    @Column(nullable = false)
+    private String createdBy;
+    private String createdById;
+
+    @Column(name = "CREATED_TS", nullable = false)
+    @CreationTimestamp
+    private LocalDateTime createdTimestamp;
+}
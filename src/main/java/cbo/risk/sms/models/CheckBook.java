@@ -2,6 +2,7 @@ package cbo.risk.sms.models;
 
 import cbo.risk.sms.enums.CheckBookLeaveType;
 import cbo.risk.sms.enums.CheckBookType;
+import cbo.risk.sms.utils.SerialRange;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
@@ -18,10 +19,16 @@ import java.time.LocalDateTime;
 @Audited
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_check_book_parent_value", columnList = "book_parent_id, serialValue"),
+        @Index(name = "idx_check_book_branch_parent_value", columnList = "BRANCH_ID, book_parent_id, serialValue"),
+        @Index(name = "idx_check_book_branch_id", columnList = "BRANCH_ID, id")
+})
 public class CheckBook {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "check_book_seq")
+    @SequenceGenerator(name = "check_book_seq", sequenceName = "check_book_seq", allocationSize = 50)
     private Long id;
 
 
@@ -80,6 +87,14 @@ public class CheckBook {
     @Column(nullable = false)
     private String endSerialNumber;
 
+    // Non-digit prefix and numeric value of startSerialNumber, so the database can sort and range-scan serials
+    private String serialPrefix;
+    private Long serialValue;
+
+    // Set while a teller has reserved this CheckBook but not confirmed the issue yet
+    private LocalDateTime heldUntil;
+    private String heldById;
+
     private LocalDateTime receivedDate;
     private String issuedBy;
     private String receivedBy;
@@ -88,6 +103,10 @@ public class CheckBook {
     private LocalDateTime issuedDate;
     private LocalDateTime returnedDate;
 
-
-
+    @PrePersist
+    @PreUpdate
+    void assignSerialValue() {
+        serialPrefix = SerialRange.prefixOf(startSerialNumber);
+        serialValue = SerialRange.valueOf(startSerialNumber);
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package cbo.risk.sms.models;
 
 
+import cbo.risk.sms.utils.SerialRange;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
@@ -12,6 +13,11 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Audited
+@Table(indexes = {
+        @Index(name = "idx_cpo_parent_value", columnList = "book_parent_id, serialValue"),
+        @Index(name = "idx_cpo_branch_parent_value", columnList = "BRANCH_ID, book_parent_id, serialValue"),
+        @Index(name = "idx_cpo_branch_id", columnList = "BRANCH_ID, id")
+})
 @Setter
 @Getter
 @NoArgsConstructor
@@ -19,7 +25,8 @@ import java.time.LocalDateTime;
 public class Cpo {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "cpo_seq")
+    @SequenceGenerator(name = "cpo_seq", sequenceName = "cpo_seq", allocationSize = 50)
     private Long id;
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "book_parent_id", nullable = false)
@@ -32,6 +39,15 @@ public class Cpo {
     @NotBlank
     @Column(nullable = false)
     private String serialNumber;
+
+    // Non-digit prefix and numeric value of serialNumber, so the database can sort and range-scan serials
+    private String serialPrefix;
+    private Long serialValue;
+
+    // Set while a teller has reserved this CPO but not confirmed the issue yet
+    private LocalDateTime heldUntil;
+    private String heldById;
+
     private LocalDateTime receivedDate;
     private LocalDateTime issuedDate;
     private LocalDateTime returnedDate;
@@ -70,5 +86,10 @@ public class Cpo {
     @Column(name = "MODIFIED_TS",nullable = false)
     private LocalDateTime modifiedTimestamp;
 
-
+    @PrePersist
+    @PreUpdate
+    void assignSerialValue() {
+        serialPrefix = SerialRange.prefixOf(serialNumber);
+        serialValue = SerialRange.valueOf(serialNumber);
+    }
 }
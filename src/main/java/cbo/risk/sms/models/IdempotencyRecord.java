@@ -0,0 +1,43 @@
+package cbo.risk.sms.models;
+
+import cbo.risk.sms.enums.IdempotencyStatus;
+import lombok.Data;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Outcome of a registration request sent with an Idempotency-Key header, so that a
+ * retry with the same key gets the original response back
+ */
+@Entity
+@Data
+public class IdempotencyRecord {
+
+    @Id
+    @Column(name = "idempotency_key", length = 128)
+    private String idempotencyKey;
+
+    // Endpoint the key was first used on, e.g. cpos/register
+    @Column(nullable = false)
+    private String endpoint;
+
+    // SHA-256 of the request body; a replay with a different body is rejected
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private IdempotencyStatus status;
+
+    // Serialized BatchResponseDTO once COMPLETED
+    @Column(columnDefinition = "text")
+    private String responseBody;
+
+    @Column(name = "CREATED_TS", nullable = false)
+    @CreationTimestamp
+    private LocalDateTime createdTimestamp;
+
+    private LocalDateTime completedTimestamp;
+}
@@ -3,6 +3,7 @@ package cbo.risk.sms.models;
 
 import cbo.risk.sms.enums.PassBookCategory;
 import cbo.risk.sms.enums.PassBookType;
+import cbo.risk.sms.utils.SerialRange;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
@@ -15,9 +16,15 @@ import java.time.LocalDateTime;
 @Data
 @Entity
 @Audited
+@Table(indexes = {
+        @Index(name = "idx_pass_book_parent_value", columnList = "book_parent_id, serialValue"),
+        @Index(name = "idx_pass_book_branch_parent_value", columnList = "BRANCH_ID, book_parent_id, serialValue"),
+        @Index(name = "idx_pass_book_branch_id", columnList = "BRANCH_ID, id")
+})
 public class PassBook {
    @Id
-   @GeneratedValue(strategy = GenerationType.IDENTITY)
+   @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pass_book_seq")
+   @SequenceGenerator(name = "pass_book_seq", sequenceName = "pass_book_seq", allocationSize = 50)
     private Long id;
  @NotNull
     @Column(nullable = false)
@@ -33,6 +40,15 @@ public class PassBook {
  @NotBlank
  @Column(nullable = false)
  private String serialNumber;
+
+ // Non-digit prefix and numeric value of serialNumber, so the database can sort and range-scan serials
+ private String serialPrefix;
+ private Long serialValue;
+
+ // Set while a teller has reserved this PassBook but not confirmed the issue yet
+ private LocalDateTime heldUntil;
+ private String heldById;
+
  private LocalDateTime receivedDate;
  private LocalDateTime issuedDate;
  private LocalDateTime returnedDate;
@@ -72,5 +88,10 @@ public class PassBook {
  @Column(name = "MODIFIED_TS",nullable = false)
  private LocalDateTime modifiedTimestamp;
 
-
+ @PrePersist
+ @PreUpdate
+ void assignSerialValue() {
+  serialPrefix = SerialRange.prefixOf(serialNumber);
+  serialValue = SerialRange.valueOf(serialNumber);
+ }
 }
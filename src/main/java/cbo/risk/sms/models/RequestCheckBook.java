@@ -16,7 +16,8 @@ import java.time.LocalDateTime;
 public class RequestCheckBook {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "request_check_book_seq")
+    @SequenceGenerator(name = "request_check_book_seq", sequenceName = "request_check_book_seq", allocationSize = 50)
     private Long id;
 
 
@@ -16,7 +16,8 @@ public class RequestCpo {
 
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "request_cpo_seq")
+    @SequenceGenerator(name = "request_cpo_seq", sequenceName = "request_cpo_seq", allocationSize = 50)
     private Long id;
 private Long cpoId;
     private String serialNumber;
@@ -17,7 +17,8 @@ import java.time.LocalDateTime;
 public class RequestPassBook {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "request_pass_book_seq")
+    @SequenceGenerator(name = "request_pass_book_seq", sequenceName = "request_pass_book_seq", allocationSize = 50)
     private Long id;
     private Long passBookId;
     private String serialNum;
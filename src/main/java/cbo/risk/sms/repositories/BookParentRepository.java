@@ -3,15 +3,27 @@ package cbo.risk.sms.repositories;
 import cbo.risk.sms.enums.CheckBookLeaveType;
 import cbo.risk.sms.enums.ParentBookType;
 import cbo.risk.sms.enums.PassBookType;
+import cbo.risk.sms.enums.StorageMode;
 import cbo.risk.sms.models.BookParent;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 @Repository
 public interface BookParentRepository extends JpaRepository<BookParent, Long> {
     List<BookParent> findByBranchId(String branchId);
@@ -19,6 +31,19 @@ public interface BookParentRepository extends JpaRepository<BookParent, Long> {
     @Query("SELECT bp FROM BookParent bp WHERE :serial BETWEEN bp.startingSerial AND bp.endingSerial")
     Optional<BookParent> findBySerialInRange(@Param("serial") String serial);
 
+    // id, startingSerial, endingSerial of every batch, for the in-memory range index
+    @Query("SELECT bp.id, bp.startingSerial, bp.endingSerial FROM BookParent bp")
+    List<Object[]> findAllSerialRanges();
+
+    // Candidate batches for range overlap checks; callers re-check the exact prefix
+    @Query("SELECT bp FROM BookParent bp WHERE bp.startingSerial LIKE CONCAT(:prefix, '%')")
+    List<BookParent> findByStartingSerialPrefix(@Param("prefix") String prefix);
+
+    // Row lock for updates to the issued-position bitmap of compressed batches
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT bp FROM BookParent bp WHERE bp.id = :id")
+    Optional<BookParent> findByIdForUpdate(@Param("id") Long id);
+
     @Query("SELECT bp FROM BookParent bp WHERE bp.branchId = :branchId AND bp.used < bp.numOfPad")
     List<BookParent> findAvailableBatchesByBranch(@Param("branchId") String branchId);
     // In BookParentRepository
@@ -59,11 +84,85 @@ public interface BookParentRepository extends JpaRepository<BookParent, Long> {
             ParentBookType parentBookType
     );
 
+    List<BookParent>
+    findByBranchIdAndCheckLeaveTypeAndParentBookTypeAndFinishedFalseOrderByIdAsc(
+            String branchId,
+            CheckBookLeaveType checkLeaveType,
+            ParentBookType parentBookType
+    );
+
+    /**
+     * Adds delta to used in a single statement, so concurrent issues and returns cannot lose
+     * updates. Refused (0 rows) when the result would fall outside 0..numOfPad; reaching
+     * numOfPad marks the batch finished.
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            UPDATE book_parent
+            SET used = used + :delta,
+                finished = finished OR used + :delta >= num_of_pad,
+                modified_ts = now()
+            WHERE id = :id
+              AND used + :delta BETWEEN 0 AND num_of_pad
+            """, nativeQuery = true)
+    int adjustUsed(@Param("id") Long id, @Param("delta") int delta);
+
+    // BookParent.advanceIssueCursor as one statement, for issue paths that do not load the parent
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            UPDATE book_parent
+            SET next_issue_offset = GREATEST(COALESCE(next_issue_offset, 0), :offset + 1),
+                last_issued_child = :childId,
+                finished = finished OR GREATEST(COALESCE(next_issue_offset, 0), :offset + 1) >= num_of_pad
+            WHERE id = :id
+            """, nativeQuery = true)
+    int advanceIssueCursor(@Param("id") Long id, @Param("offset") long offset, @Param("childId") Long childId);
+
+    // Moves the issue cursor back to a released reservation; the batch reopens unless every pad is used
+    @Modifying(flushAutomatically = true)
+    @Query(value = """
+            UPDATE book_parent
+            SET next_issue_offset = LEAST(COALESCE(next_issue_offset, 0), :offset),
+                finished = used >= num_of_pad
+            WHERE id = :id
+            """, nativeQuery = true)
+    int rewindIssueCursor(@Param("id") Long id, @Param("offset") long offset);
+
+    // Closes a CheckBook batch once none of its checkbooks is left unissued
+    @Modifying
+    @Query("UPDATE BookParent bp SET bp.finished = true WHERE bp.id = :id AND NOT EXISTS " +
+            "(SELECT cb.id FROM CheckBook cb WHERE cb.bookParent.id = :id AND cb.issuedDate IS NULL)")
+    int markFinishedIfNoCheckBookLeft(@Param("id") Long id);
+
     Optional<BookParent>
     findFirstByBranchIdAndParentBookTypeAndFinishedFalseOrderByIdAsc(
             String branchId,
             ParentBookType parentBookType
     );
+
+    List<BookParent> findByBranchIdAndParentBookTypeAndFinishedFalseOrderByIdAsc(
+            String branchId,
+            ParentBookType parentBookType
+    );
+
+    // Batches of the branch that still have serials without a child row
+    List<BookParent> findByBranchIdAndParentBookTypeAndStorageModeAndFinishedFalseOrderByIdAsc(
+            String branchId,
+            ParentBookType parentBookType,
+            StorageMode storageMode
+    );
+
+    // Keyset pagination: batches after the last id of the previous page
+    List<BookParent> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+    List<BookParent> findByBranchIdAndIdGreaterThanOrderByIdAsc(String branchId, Long after, Pageable pageable);
+
+    // Every batch through a database cursor; must be read and closed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT bp FROM BookParent bp ORDER BY bp.id")
+    Stream<BookParent> streamAll();
     @Query("""
     SELECT bp
     FROM BookParent bp
@@ -0,0 +1,255 @@
+package cbo.risk.sms.repositories;
+
+import cbo.risk.sms.dtos.BatchRegistrationDTO;
+import cbo.risk.sms.models.BookParent;
+import cbo.risk.sms.utils.RegistrationProgress;
+import cbo.risk.sms.utils.SerialRange;
+import org.hibernate.Session;
+import org.hibernate.envers.AuditReaderFactory;
+import org.hibernate.envers.DefaultRevisionEntity;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Streams registration children straight into PostgreSQL with COPY FROM STDIN,
+ * inside the caller's transaction. Per-item ADD audit rows are copied as well unless
+ * bulk registration auditing records the batch as a whole.
+ */
+@Repository
+public class BulkCopyRepository {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkCopyRepository.class);
+
+    // Must match allocationSize of the entity @SequenceGenerator mappings
+    private static final int ALLOCATION_SIZE = 50;
+
+    // Bytes buffered before each write to the COPY stream
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Envers revision type for inserted rows
+    private static final int REVTYPE_ADD = 0;
+
+    private static final String CHECK_BOOK_COLUMNS = "id, book_parent_id, start_serial_number, end_serial_number, serial_prefix, serial_value, "
+            + "check_book_type, check_book_leave_type, branch_id, subprocess_id, process_id, "
+            + "created_by, created_by_id, last_updated_by, last_updated_by_id, created_ts, modified_ts";
+
+    private static final String CPO_COLUMNS = "id, book_parent_id, serial_number, serial_prefix, serial_value, "
+            + "branch_id, subprocess_id, process_id, "
+            + "created_by, created_by_id, last_updated_by, last_updated_by_id, created_ts, modified_ts";
+
+    private static final String PASS_BOOK_COLUMNS = "id, book_parent_id, serial_number, serial_prefix, serial_value, "
+            + "pass_book_type, pass_book_category, branch_id, subprocess_id, process_id, "
+            + "created_by, created_by_id, last_updated_by, last_updated_by_id, created_ts, modified_ts";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${sms.audit.bulk-registration:true}")
+    private boolean bulkAuditEnabled;
+
+    /**
+     * True when the current connection is a PostgreSQL connection that can run COPY
+     */
+    public boolean isSupported() {
+        return entityManager.unwrap(Session.class)
+                .doReturningWork(connection -> connection.isWrapperFor(PGConnection.class));
+    }
+
+    public int copyCheckBooks(BookParent parent, BatchRegistrationDTO dto, SerialRange pages,
+                              int leavesPerCheckBook, int numberOfCheckBooks) {
+        String now = LocalDateTime.now().toString();
+        return copyWithAudit("check_book", "check_book_seq", CHECK_BOOK_COLUMNS, numberOfCheckBooks, (i, row) -> {
+            long checkbookStartOffset = (long) i * leavesPerCheckBook;
+            appendField(row, String.valueOf(parent.getId()));
+            appendField(row, pages.serialAt(checkbookStartOffset));
+            appendField(row, pages.serialAt(checkbookStartOffset + leavesPerCheckBook - 1));
+            appendSerialValue(row, pages, pages.getStart() + checkbookStartOffset);
+            appendField(row, dto.getCheckBookType().name());
+            appendField(row, dto.getCheckBookLeaveType().name());
+            appendCommonFields(row, dto, now);
+        });
+    }
+
+    public int copyCpos(BookParent parent, BatchRegistrationDTO dto, SerialRange serials) {
+        String now = LocalDateTime.now().toString();
+        int rows = Math.toIntExact(serials.size());
+        return copyWithAudit("cpo", "cpo_seq", CPO_COLUMNS, rows, (i, row) -> {
+            appendField(row, String.valueOf(parent.getId()));
+            appendField(row, serials.serialAt(i));
+            appendSerialValue(row, serials, serials.getStart() + i);
+            appendCommonFields(row, dto, now);
+        });
+    }
+
+    public int copyPassBooks(BookParent parent, BatchRegistrationDTO dto, SerialRange serials) {
+        String now = LocalDateTime.now().toString();
+        int rows = Math.toIntExact(serials.size());
+        return copyWithAudit("pass_book", "pass_book_seq", PASS_BOOK_COLUMNS, rows, (i, row) -> {
+            appendField(row, String.valueOf(parent.getId()));
+            appendField(row, serials.serialAt(i));
+            appendSerialValue(row, serials, serials.getStart() + i);
+            appendField(row, dto.getPassBookType().name());
+            appendField(row, dto.getPassBookCategory().name());
+            appendCommonFields(row, dto, now);
+        });
+    }
+
+    // ============== HELPER METHODS ==============
+
+    @FunctionalInterface
+    private interface RowWriter {
+        // Appends the columns after id, each preceded by a tab
+        void write(int index, StringBuilder row);
+    }
+
+    private int copyWithAudit(String table, String sequence, String columns, int rows, RowWriter writer) {
+        // Registers the Envers revision of this transaction so the audit rows can point at it
+        int revision = AuditReaderFactory.get(entityManager)
+                .getCurrentRevision(DefaultRevisionEntity.class, true)
+                .getId();
+        long[] blockHighs = allocateIds(sequence, rows);
+
+        // The parent and revision rows must exist before COPY references them
+        entityManager.flush();
+
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+            copy(copyManager, "COPY " + table + " (" + columns + ") FROM STDIN", rows, true, (i, row) -> {
+                row.append(idAt(blockHighs, i));
+                writer.write(i, row);
+            });
+            if (!bulkAuditEnabled) {
+                copy(copyManager, "COPY " + table + "_aud (rev, revtype, " + columns + ") FROM STDIN", rows, false, (i, row) -> {
+                    row.append(revision).append('\t').append(REVTYPE_ADD).append('\t').append(idAt(blockHighs, i));
+                    writer.write(i, row);
+                });
+            }
+        });
+
+        log.info("Copied {} rows into {} (revision {}, item audit rows: {})", rows, table, revision, !bulkAuditEnabled);
+        return rows;
+    }
+
+    private void copy(CopyManager copyManager, String sql, int rows, boolean reportProgress,
+                      RowWriter writer) throws SQLException {
+        CopyIn copyIn = copyManager.copyIn(sql);
+        try {
+            StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 1024);
+            for (int i = 0; i < rows; i++) {
+                writer.write(i, buffer);
+                buffer.append('\n');
+                if (buffer.length() >= BUFFER_SIZE) {
+                    writeBuffer(copyIn, buffer);
+                    if (reportProgress) {
+                        RegistrationProgress.report(i + 1);
+                    }
+                }
+            }
+            writeBuffer(copyIn, buffer);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void writeBuffer(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.length() == 0) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Reserves ids the same way Hibernate's pooled optimizer does: every sequence value v
+     * owns the ids (v - ALLOCATION_SIZE, v]. Values below ALLOCATION_SIZE are skipped so
+     * no id is ever below 1.
+     */
+    private long[] allocateIds(String sequence, int rows) {
+        int blocks = (rows + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE;
+        long[] blockHighs = new long[blocks];
+        int found = 0;
+
+        while (found < blocks) {
+            List<?> values = entityManager
+                    .createNativeQuery("SELECT nextval('" + sequence + "') FROM generate_series(1, :count)")
+                    .setParameter("count", blocks - found + 1)
+                    .getResultList();
+            for (Object value : values) {
+                long high = ((Number) value).longValue();
+                if (high >= ALLOCATION_SIZE && found < blocks) {
+                    blockHighs[found++] = high;
+                }
+            }
+        }
+        return blockHighs;
+    }
+
+    private long idAt(long[] blockHighs, int index) {
+        return blockHighs[index / ALLOCATION_SIZE] - (ALLOCATION_SIZE - 1) + (index % ALLOCATION_SIZE);
+    }
+
+    private void appendCommonFields(StringBuilder row, BatchRegistrationDTO dto, String now) {
+        appendField(row, dto.getBranchId());
+        appendField(row, dto.getSubProcessId());
+        appendField(row, dto.getProcessId());
+        appendField(row, dto.getCreatedBy());
+        appendField(row, dto.getCreatedById());
+        appendField(row, dto.getLastUpdatedBy());
+        appendField(row, dto.getLastUpdatedById());
+        appendField(row, now);
+        appendField(row, now);
+    }
+
+    // The serial_prefix and serial_value columns the entities fill in @PrePersist
+    private void appendSerialValue(StringBuilder row, SerialRange range, long value) {
+        appendField(row, range.getPrefix());
+        row.append('\t').append(value);
+    }
+
+    /**
+     * Appends a tab and the value in COPY text format (\N for null, special characters escaped)
+     */
+    private void appendField(StringBuilder row, String value) {
+        row.append('\t');
+        if (value == null) {
+            row.append("\\N");
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    row.append("\\\\");
+                    break;
+                case '\t':
+                    row.append("\\t");
+                    break;
+                case '\n':
+                    row.append("\\n");
+                    break;
+                case '\r':
+                    row.append("\\r");
+                    break;
+                default:
+                    row.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package cbo.risk.sms.repositories;
+
+import cbo.risk.sms.models.BulkRegistrationAudit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface BulkRegistrationAuditRepository extends JpaRepository<BulkRegistrationAudit, Long> {
+
+    Optional<BulkRegistrationAudit> findFirstByBookParentIdOrderByIdAsc(Long bookParentId);
+}
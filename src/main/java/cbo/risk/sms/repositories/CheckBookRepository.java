@@ -7,16 +7,75 @@ import cbo.risk.sms.models.CheckBook;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface CheckBookRepository extends JpaRepository<CheckBook, Long> {
     List<CheckBook> findByBookParentIdOrderByStartSerialNumberAsc(Long bookParentId);
+
+    /**
+     * Locks and returns the first unissued checkbook of the batch. Rows another transaction
+     * has already locked are skipped instead of waited on, so concurrent tellers each get a
+     * different checkbook. Ordered by the numeric serial_value, which the
+     * (book_parent_id, serial_value) index serves.
+     */
+    @Query(value = """
+            SELECT * FROM check_book
+            WHERE book_parent_id = :parentId
+              AND check_book_type = :checkBookType
+              AND issued_date IS NULL
+              AND held_until IS NULL
+            ORDER BY serial_value
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    Optional<CheckBook> claimNextAvailable(@Param("parentId") Long parentId,
+                                           @Param("checkBookType") String checkBookType);
+
+    // Same as claimNextAvailable, for up to :limit consecutive checkbooks
+    @Query(value = """
+            SELECT * FROM check_book
+            WHERE book_parent_id = :parentId
+              AND check_book_type = :checkBookType
+              AND issued_date IS NULL
+              AND held_until IS NULL
+            ORDER BY serial_value
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    List<CheckBook> claimAvailable(@Param("parentId") Long parentId,
+                                   @Param("checkBookType") String checkBookType,
+                                   @Param("limit") int limit);
+
+    // Serial value of the batch's first checkbook that is neither issued nor held, read from the index
+    @Query("SELECT MIN(cb.serialValue) FROM CheckBook cb WHERE cb.bookParent.id = :parentId " +
+            "AND cb.issuedDate IS NULL AND cb.heldUntil IS NULL")
+    Long findFirstIssuableSerialValue(@Param("parentId") Long parentId);
+
+    // Serial values of the batch's issued checkbooks from the given value on, for sequential issuance checks
+    @Query("SELECT cb.serialValue FROM CheckBook cb WHERE cb.bookParent.id = :parentId " +
+            "AND cb.issuedDate IS NOT NULL AND cb.serialValue >= :from")
+    List<Long> findIssuedSerialValues(@Param("parentId") Long parentId, @Param("from") long from);
+
+    // Whether the batch's checkbook at the given serial value is issued, for the sequential issuance check
+    boolean existsByBookParentIdAndSerialValueAndIssuedDateIsNotNull(Long bookParentId, Long serialValue);
+
+    List<CheckBook> findByBookParentIdAndSerialValueIn(Long bookParentId, Collection<Long> serialValues);
+
     List<CheckBook> findByBookParentIdAndCheckBookTypeAndIssuedDateIsNull(
             Long bookParentId, CheckBookType type);
     @Query("SELECT CASE WHEN COUNT(cb) > 0 THEN TRUE ELSE FALSE END " +
@@ -52,6 +111,28 @@ public interface CheckBookRepository extends JpaRepository<CheckBook, Long> {
     List<CheckBook> findByBranchId(String branchId);
     Page<CheckBook> findByBranchId(String branchId, Pageable pageable);
 
+    // Keyset pagination: rows after the last key of the previous page, served by the primary key
+    // and the (BRANCH_ID, id) and (book_parent_id, serialValue) indexes
+    List<CheckBook> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+    List<CheckBook> findByBranchIdAndIdGreaterThanOrderByIdAsc(String branchId, Long after, Pageable pageable);
+    List<CheckBook> findByBranchIdAndIssuedDateIsNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<CheckBook> findByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<CheckBook> findByBranchIdAndReturnedDateIsNotNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<CheckBook> findByBookParentIdAndSerialValueGreaterThanOrderBySerialValueAsc(
+            Long bookParentId, Long after, Pageable pageable);
+
+    // Every row through a database cursor, fetchSize rows per round trip; must be read and
+    // closed inside a transaction. Read-only, so Hibernate keeps no dirty-checking snapshots.
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT cb FROM CheckBook cb ORDER BY cb.id")
+    Stream<CheckBook> streamAll();
+
     // Find by BookParent
     List<CheckBook> findByBookParentId(Long bookParentId);
 
@@ -102,4 +183,20 @@ public interface CheckBookRepository extends JpaRepository<CheckBook, Long> {
             @Param("createdBy") String createdBy,
             @Param("checkBookType") CheckBookType checkBookType,
             @Param("checkBookLeaveType") CheckBookLeaveType checkBookLeaveType);
-}
\ No newline at end of file
+
+    // Items behind the given request rows, loaded so that receiving them is audited by Envers
+    @Query("SELECT i FROM CheckBook i WHERE i.id IN (SELECT r.checkBookId FROM RequestCheckBook r WHERE r.id IN :requestIds)")
+    List<CheckBook> findByRequestIds(@Param("requestIds") Collection<Long> requestIds);
+
+    // Turns the caller's unexpired hold into a claim; 0 when the hold expired or belongs to someone else
+    @Modifying
+    @Query("UPDATE CheckBook cb SET cb.heldUntil = NULL, cb.heldById = NULL " +
+            "WHERE cb.id = :id AND cb.heldById = :heldById AND cb.heldUntil >= :now AND cb.issuedDate IS NULL")
+    int confirmHold(@Param("id") Long id, @Param("heldById") String heldById, @Param("now") LocalDateTime now);
+
+    // CheckBooks are claimed with SKIP LOCKED rather than a cursor, so releasing is all there is to do
+    @Modifying
+    @Query("UPDATE CheckBook cb SET cb.heldUntil = NULL, cb.heldById = NULL " +
+            "WHERE cb.heldUntil < :now AND cb.issuedDate IS NULL")
+    int releaseExpiredHolds(@Param("now") LocalDateTime now);
+}
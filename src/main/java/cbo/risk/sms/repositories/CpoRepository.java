@@ -6,18 +6,63 @@ import cbo.risk.sms.models.PassBook;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface CpoRepository extends JpaRepository<Cpo, Long> {
 
     // Basic CRUD
-    List<Cpo> findByBranchIdOrderBySerialNumberAsc(String branchId);
+    List<Cpo> findByBranchIdOrderBySerialPrefixAscSerialValueAsc(String branchId);
+
+    // Served by the (book_parent_id, serialValue) index; reserved rows are skipped
+    Optional<Cpo> findFirstByBookParentIdAndIssuedDateIsNullAndHeldUntilIsNullAndSerialValueGreaterThanEqualOrderBySerialValueAsc(
+            Long bookParentId, Long serialValue);
+
+    List<Cpo> findByBookParentIdAndIssuedDateIsNullAndHeldUntilIsNullAndSerialValueGreaterThanEqualOrderBySerialValueAsc(
+            Long bookParentId, Long serialValue, Pageable pageable);
+
+    // id and serialValue of the unissued CPOs after the given serial value, for the prefetch buffer
+    @Query("SELECT c.id, c.serialValue FROM Cpo c WHERE c.bookParent.id = :parentId " +
+            "AND c.issuedDate IS NULL AND c.heldUntil IS NULL AND c.serialValue > :after " +
+            "ORDER BY c.serialValue ASC")
+    List<Object[]> findUnissuedAfter(@Param("parentId") Long parentId,
+                                     @Param("after") long after,
+                                     Pageable pageable);
+
+    // Claims a prefetched CPO; 0 when it was issued some other way in the meantime
+    @Modifying
+    @Query("UPDATE Cpo c SET c.issuedDate = :now, c.modifiedTimestamp = :now " +
+            "WHERE c.id = :id AND c.issuedDate IS NULL AND c.heldUntil IS NULL")
+    int claimUnissued(@Param("id") Long id, @Param("now") LocalDateTime now);
+
+    // Serial value of the batch's first CPO from the given value on that is neither issued nor held
+    @Query("SELECT MIN(c.serialValue) FROM Cpo c WHERE c.bookParent.id = :parentId " +
+            "AND c.issuedDate IS NULL AND c.heldUntil IS NULL AND c.serialValue >= :from")
+    Long findFirstIssuableSerialValue(@Param("parentId") Long parentId, @Param("from") long from);
+
+    // Serial values of the batch's issued CPOs from the given value on, for sequential issuance checks
+    @Query("SELECT c.serialValue FROM Cpo c WHERE c.bookParent.id = :parentId " +
+            "AND c.issuedDate IS NOT NULL AND c.serialValue >= :from")
+    List<Long> findIssuedSerialValues(@Param("parentId") Long parentId, @Param("from") long from);
+
+    // Whether the batch's CPO at the given serial value is issued, for the sequential issuance check
+    boolean existsByBookParentIdAndSerialValueAndIssuedDateIsNotNull(Long bookParentId, Long serialValue);
+
     Optional<Cpo> findById(Long id);
 
     // Find by serial number
@@ -28,6 +73,28 @@ public interface CpoRepository extends JpaRepository<Cpo, Long> {
     List<Cpo> findByBranchId(String branchId);
     Page<Cpo> findByBranchId(String branchId, Pageable pageable);
 
+    // Keyset pagination: rows after the last key of the previous page, served by the primary key
+    // and the (BRANCH_ID, id) and (book_parent_id, serialValue) indexes
+    List<Cpo> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+    List<Cpo> findByBranchIdAndIdGreaterThanOrderByIdAsc(String branchId, Long after, Pageable pageable);
+    List<Cpo> findByBranchIdAndIssuedDateIsNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<Cpo> findByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<Cpo> findByBranchIdAndReturnedDateIsNotNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<Cpo> findByBookParentIdAndSerialValueGreaterThanOrderBySerialValueAsc(
+            Long bookParentId, Long after, Pageable pageable);
+
+    // Every row through a database cursor, fetchSize rows per round trip; must be read and
+    // closed inside a transaction. Read-only, so Hibernate keeps no dirty-checking snapshots.
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT c FROM Cpo c ORDER BY c.id")
+    Stream<Cpo> streamAll();
+
     // Find by BookParent
     List<Cpo> findByBookParentId(Long bookParentId);
 
@@ -35,7 +102,7 @@ public interface CpoRepository extends JpaRepository<Cpo, Long> {
     int countByBookParentId(Long bookParentId);
 
     // Find by parent with ordering for sequential issuance
-    @Query("SELECT c FROM Cpo c WHERE c.bookParent = :bookParent ORDER BY c.serialNumber ASC")
+    @Query("SELECT c FROM Cpo c WHERE c.bookParent = :bookParent ORDER BY c.serialValue ASC")
     List<Cpo> findByBookParentOrderBySerialNumberAsc(@Param("bookParent") BookParent bookParent);
 
     // Status-based queries
@@ -75,4 +142,30 @@ public interface CpoRepository extends JpaRepository<Cpo, Long> {
     @Query("SELECT CASE WHEN COUNT(c) > 0 THEN TRUE ELSE FALSE END " +
             "FROM Cpo c WHERE c.bookParent.id = :parentId AND c.issuedDate IS NOT NULL")
     boolean hasIssuedItemsByBookParentId(@Param("parentId") Long parentId);
-}
\ No newline at end of file
+
+    // Items behind the given request rows, loaded so that receiving them is audited by Envers
+    @Query("SELECT i FROM Cpo i WHERE i.id IN (SELECT r.cpoId FROM RequestCpo r WHERE r.id IN :requestIds)")
+    List<Cpo> findByRequestIds(@Param("requestIds") Collection<Long> requestIds);
+
+    // Turns the caller's unexpired hold into a claim; 0 when the hold expired or belongs to someone else
+    @Modifying
+    @Query("UPDATE Cpo c SET c.heldUntil = NULL, c.heldById = NULL " +
+            "WHERE c.id = :id AND c.heldById = :heldById AND c.heldUntil >= :now AND c.issuedDate IS NULL")
+    int confirmHold(@Param("id") Long id, @Param("heldById") String heldById, @Param("now") LocalDateTime now);
+
+    /**
+     * Releases every expired hold in one statement and returns, per batch, the lowest
+     * released serial value so the batch's issue cursor can be moved back to it.
+     */
+    @Transactional
+    @Query(value = """
+            WITH released AS (
+                UPDATE cpo
+                SET held_until = NULL, held_by_id = NULL
+                WHERE held_until < :now AND issued_date IS NULL
+                RETURNING book_parent_id, serial_value
+            )
+            SELECT book_parent_id, MIN(serial_value) FROM released GROUP BY book_parent_id
+            """, nativeQuery = true)
+    List<Object[]> releaseExpiredHolds(@Param("now") LocalDateTime now);
+}
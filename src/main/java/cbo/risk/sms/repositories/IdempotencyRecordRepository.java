@@ -0,0 +1,29 @@
+package cbo.risk.sms.repositories;
+
+import cbo.risk.sms.models.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Takes over an IN_PROGRESS claim for the same request whose lease ran out, e.g. because the
+     * instance holding it crashed. Returns 0 if the claim was completed, released or taken over
+     * by another request in the meantime.
+     */
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.createdTimestamp = :now " +
+            "WHERE r.idempotencyKey = :key AND r.endpoint = :endpoint AND r.requestHash = :requestHash " +
+            "AND r.status = cbo.risk.sms.enums.IdempotencyStatus.IN_PROGRESS AND r.createdTimestamp < :expiredBefore")
+    int reclaimExpired(@Param("key") String key,
+                       @Param("endpoint") String endpoint,
+                       @Param("requestHash") String requestHash,
+                       @Param("expiredBefore") LocalDateTime expiredBefore,
+                       @Param("now") LocalDateTime now);
+}
@@ -7,18 +7,49 @@ import cbo.risk.sms.models.PassBook;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface PassBookRepository extends JpaRepository<PassBook, Long> {
 
     // Basic CRUD
-    List<PassBook> findByBranchIdOrderBySerialNumberAsc(String branchId);
+    List<PassBook> findByBranchIdOrderBySerialPrefixAscSerialValueAsc(String branchId);
+
+    // Served by the (book_parent_id, serialValue) index; reserved rows are skipped
+    Optional<PassBook> findFirstByBookParentIdAndIssuedDateIsNullAndHeldUntilIsNullAndSerialValueGreaterThanEqualOrderBySerialValueAsc(
+            Long bookParentId, Long serialValue);
+
+    List<PassBook> findByBookParentIdAndIssuedDateIsNullAndHeldUntilIsNullAndSerialValueGreaterThanEqualOrderBySerialValueAsc(
+            Long bookParentId, Long serialValue, Pageable pageable);
+
+    // Serial value of the batch's first PassBook from the given value on that is neither issued nor held
+    @Query("SELECT MIN(pb.serialValue) FROM PassBook pb WHERE pb.bookParent.id = :parentId " +
+            "AND pb.issuedDate IS NULL AND pb.heldUntil IS NULL AND pb.serialValue >= :from")
+    Long findFirstIssuableSerialValue(@Param("parentId") Long parentId, @Param("from") long from);
+
+    // Serial values of the batch's issued PassBooks from the given value on, for sequential issuance checks
+    @Query("SELECT pb.serialValue FROM PassBook pb WHERE pb.bookParent.id = :parentId " +
+            "AND pb.issuedDate IS NOT NULL AND pb.serialValue >= :from")
+    List<Long> findIssuedSerialValues(@Param("parentId") Long parentId, @Param("from") long from);
+
+    // Whether the batch's PassBook at the given serial value is issued, for the sequential issuance check
+    boolean existsByBookParentIdAndSerialValueAndIssuedDateIsNotNull(Long bookParentId, Long serialValue);
+
     Optional<PassBook> findById(Long id);
 
     // Find by serial number
@@ -29,6 +60,28 @@ public interface PassBookRepository extends JpaRepository<PassBook, Long> {
     List<PassBook> findByBranchId(String branchId);
     Page<PassBook> findByBranchId(String branchId, Pageable pageable);
 
+    // Keyset pagination: rows after the last key of the previous page, served by the primary key
+    // and the (BRANCH_ID, id) and (book_parent_id, serialValue) indexes
+    List<PassBook> findByIdGreaterThanOrderByIdAsc(Long after, Pageable pageable);
+    List<PassBook> findByBranchIdAndIdGreaterThanOrderByIdAsc(String branchId, Long after, Pageable pageable);
+    List<PassBook> findByBranchIdAndIssuedDateIsNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<PassBook> findByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<PassBook> findByBranchIdAndReturnedDateIsNotNullAndIdGreaterThanOrderByIdAsc(
+            String branchId, Long after, Pageable pageable);
+    List<PassBook> findByBookParentIdAndSerialValueGreaterThanOrderBySerialValueAsc(
+            Long bookParentId, Long after, Pageable pageable);
+
+    // Every row through a database cursor, fetchSize rows per round trip; must be read and
+    // closed inside a transaction. Read-only, so Hibernate keeps no dirty-checking snapshots.
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT pb FROM PassBook pb ORDER BY pb.id")
+    Stream<PassBook> streamAll();
+
     // Find by BookParent
     List<PassBook> findByBookParentId(Long bookParentId);
 
@@ -36,7 +89,7 @@ public interface PassBookRepository extends JpaRepository<PassBook, Long> {
     int countByBookParentId(Long bookParentId);
 
     // Find by parent with ordering for sequential issuance
-    @Query("SELECT pb FROM PassBook pb WHERE pb.bookParent = :bookParent ORDER BY pb.serialNumber ASC")
+    @Query("SELECT pb FROM PassBook pb WHERE pb.bookParent = :bookParent ORDER BY pb.serialValue ASC")
     List<PassBook> findByBookParentOrderBySerialNumberAsc(@Param("bookParent") BookParent bookParent);
 
     // Status-based queries
@@ -91,4 +144,30 @@ public interface PassBookRepository extends JpaRepository<PassBook, Long> {
     @Query("SELECT CASE WHEN COUNT(pb) > 0 THEN TRUE ELSE FALSE END " +
             "FROM PassBook pb WHERE pb.bookParent.id = :parentId AND pb.issuedDate IS NOT NULL")
     boolean hasIssuedItemsByBookParentId(@Param("parentId") Long parentId);
-}
\ No newline at end of file
+
+    // Items behind the given request rows, loaded so that receiving them is audited by Envers
+    @Query("SELECT i FROM PassBook i WHERE i.id IN (SELECT r.passBookId FROM RequestPassBook r WHERE r.id IN :requestIds)")
+    List<PassBook> findByRequestIds(@Param("requestIds") Collection<Long> requestIds);
+
+    // Turns the caller's unexpired hold into a claim; 0 when the hold expired or belongs to someone else
+    @Modifying
+    @Query("UPDATE PassBook pb SET pb.heldUntil = NULL, pb.heldById = NULL " +
+            "WHERE pb.id = :id AND pb.heldById = :heldById AND pb.heldUntil >= :now AND pb.issuedDate IS NULL")
+    int confirmHold(@Param("id") Long id, @Param("heldById") String heldById, @Param("now") LocalDateTime now);
+
+    /**
+     * Releases every expired hold in one statement and returns, per batch, the lowest
+     * released serial value so the batch's issue cursor can be moved back to it.
+     */
+    @Transactional
+    @Query(value = """
+            WITH released AS (
+                UPDATE pass_book
+                SET held_until = NULL, held_by_id = NULL
+                WHERE held_until < :now AND issued_date IS NULL
+                RETURNING book_parent_id, serial_value
+            )
+            SELECT book_parent_id, MIN(serial_value) FROM released GROUP BY book_parent_id
+            """, nativeQuery = true)
+    List<Object[]> releaseExpiredHolds(@Param("now") LocalDateTime now);
+}
@@ -3,12 +3,35 @@ package cbo.risk.sms.repositories;
 import cbo.risk.sms.models.CheckBook;
 import cbo.risk.sms.models.RequestCheckBook;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface RequestCheckBookRepository extends JpaRepository<RequestCheckBook,Long> {
     List<RequestCheckBook> findByBranchId(String branchId);
 
+    // The given request ids that are issued and not yet received
+    @Query("SELECT r.id FROM RequestCheckBook r WHERE r.id IN :ids AND r.issuedDate IS NOT NULL AND r.receivedDate IS NULL")
+    List<Long> findReceivableIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT r.id FROM RequestCheckBook r WHERE r.id IN :ids " +
+            "AND (r.issuedById IS NULL OR r.issuedById <> :receivedById)")
+    List<Long> findIssuedByOtherThan(@Param("ids") Collection<Long> ids,
+                                     @Param("receivedById") String receivedById);
+
+    // Only rows not received yet, so a concurrent receive shows up as a lower count
+    @Modifying
+    @Query("UPDATE RequestCheckBook r SET r.receivedDate = :now, r.receivedBy = :receivedBy, " +
+            "r.receivedById = :receivedById, r.modifiedTimestamp = :now " +
+            "WHERE r.id IN :ids AND r.receivedDate IS NULL")
+    int markReceived(@Param("ids") Collection<Long> ids,
+                     @Param("receivedBy") String receivedBy,
+                     @Param("receivedById") String receivedById,
+                     @Param("now") LocalDateTime now);
 }
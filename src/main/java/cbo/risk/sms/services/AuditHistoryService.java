@@ -0,0 +1,12 @@
+package cbo.risk.sms.services;
+
+import cbo.risk.sms.dtos.ItemRevisionDTO;
+import cbo.risk.sms.enums.ParentBookType;
+
+import java.util.List;
+
+public interface AuditHistoryService {
+
+    // Revisions of one CheckBook, CPO or PassBook, oldest first
+    List<ItemRevisionDTO> getItemHistory(ParentBookType itemType, Long itemId);
+}
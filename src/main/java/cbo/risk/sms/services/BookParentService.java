@@ -1,11 +1,15 @@
 package cbo.risk.sms.services;
 
+import cbo.risk.sms.dtos.BatchPreviewDTO;
 import cbo.risk.sms.dtos.BatchRegistrationDTO;
 import cbo.risk.sms.dtos.BatchResponseDTO;
 import cbo.risk.sms.dtos.IssueRequestDTO;
+import cbo.risk.sms.dtos.KeysetPageDTO;
 import cbo.risk.sms.dtos.ReturnRequestDTO;
 import cbo.risk.sms.models.BookParent;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,11 +19,15 @@ public interface BookParentService {
     BatchResponseDTO registerCheckBookBatch(BatchRegistrationDTO registrationDTO);
     BatchResponseDTO registerCpoBatch(BatchRegistrationDTO registrationDTO);
     BatchResponseDTO registerPassBookBatch(BatchRegistrationDTO registrationDTO);
+    BatchPreviewDTO previewRegistration(BatchRegistrationDTO registrationDTO); // Nothing is written
 
     // CRUD Operations
     Optional<BookParent> findById(Long id);
     List<BookParent> findAll();
+    void streamAll(OutputStream out) throws IOException; // findAll as a JSON array, written row by row
     List<BookParent> findByBranchId(String branchId);
+    KeysetPageDTO<BookParent> scroll(String cursor, Integer size); // Keyset pagination on id
+    KeysetPageDTO<BookParent> scrollByBranch(String branchId, String cursor, Integer size);
     void delete(Long id);
 
     // Business Operations
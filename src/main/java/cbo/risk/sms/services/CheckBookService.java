@@ -7,6 +7,8 @@ import org.apache.poi.ss.formula.functions.T;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,6 +16,10 @@ public interface CheckBookService {
 
     // Two-step issuance process
     ResponseDTO<RequestCheckBookDTO> issueAvailableCheckBook(RequestCheckBookDTO request);
+    ResponseDTO<List<RequestCheckBookDTO>> issueAvailableCheckBooks(RequestCheckBookDTO request, int quantity); // One transaction for all
+    ResponseDTO<CheckBookDTO> reserveAvailableCheckBook(RequestCheckBookDTO request); // Holds it until confirmed or expired
+    ResponseDTO<RequestCheckBookDTO> confirmCheckBookReservation(Long id, RequestCheckBookDTO request);
+    ResponseDTO<List<Long>> receiveCheckBooks(BulkReceiveDTO receive); // Set-based, all or nothing
     ResponseDTO<RequestCheckBookDTO> receiveCheckBook(RequestCheckBookDTO request);
 
     // Helper methods
@@ -25,7 +31,12 @@ public interface CheckBookService {
     CheckBookDTO create(CheckBookCreateDTO createDTO);
     Optional<CheckBookDTO> findById(Long id);
     List<CheckBookDTO> findAll();
+    void streamAll(OutputStream out) throws IOException; // findAll as a JSON array, written row by row
     Page<CheckBookDTO> findAll(Pageable pageable);
+    // Keyset pagination; pass the returned nextCursor back to read the next page
+    KeysetPageDTO<CheckBookDTO> scroll(String cursor, Integer size);
+    KeysetPageDTO<CheckBookDTO> scrollByBranch(String branchId, String status, String cursor, Integer size);
+    KeysetPageDTO<CheckBookDTO> scrollByParent(Long parentId, String cursor, Integer size);
     CheckBookDTO update(Long id, CheckBookUpdateDTO updateDTO);
     void delete(Long id);
 
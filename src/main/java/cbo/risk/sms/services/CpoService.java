@@ -4,18 +4,29 @@ import cbo.risk.sms.dtos.*;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
 
 public interface CpoService {
     ResponseDTO<RequestCpoDTO> issueAvailableCpo(RequestCpoDTO request);
+    ResponseDTO<List<RequestCpoDTO>> issueAvailableCpos(RequestCpoDTO request, int quantity); // One transaction for all
+    ResponseDTO<CpoDTO> reserveAvailableCpo(RequestCpoDTO request); // Holds it until confirmed or expired
+    ResponseDTO<RequestCpoDTO> confirmCpoReservation(Long id, RequestCpoDTO request);
+    ResponseDTO<List<Long>> receiveCpos(BulkReceiveDTO receive); // Set-based, all or nothing
 
 
     // CRUD Operations
     CpoDTO create(CpoCreateDTO createDTO);
     Optional<CpoDTO> findById(Long id);
     List<CpoDTO> findAll();
+    void streamAll(OutputStream out) throws IOException; // findAll as a JSON array, written row by row
     Page<CpoDTO> findAll(Pageable pageable);
+    // Keyset pagination; pass the returned nextCursor back to read the next page
+    KeysetPageDTO<CpoDTO> scroll(String cursor, Integer size);
+    KeysetPageDTO<CpoDTO> scrollByBranch(String branchId, String status, String cursor, Integer size);
+    KeysetPageDTO<CpoDTO> scrollByParent(Long parentId, String cursor, Integer size);
     CpoDTO update(Long id, CpoUpdateDTO updateDTO);
     void delete(Long id);
 
@@ -0,0 +1,16 @@
+package cbo.risk.sms.services;
+
+import cbo.risk.sms.dtos.BatchRegistrationDTO;
+import cbo.risk.sms.dtos.BatchResponseDTO;
+
+import java.util.function.Supplier;
+
+public interface IdempotencyService {
+
+    /**
+     * Runs the registration once per idempotency key. A replay of a completed key returns
+     * the stored response without running it again; a null key just runs it.
+     */
+    BatchResponseDTO execute(String idempotencyKey, String endpoint, BatchRegistrationDTO request,
+                             Supplier<BatchResponseDTO> registration);
+}
@@ -0,0 +1,16 @@
+package cbo.risk.sms.services;
+
+import cbo.risk.sms.enums.ParentBookType;
+
+import java.util.function.Supplier;
+
+public interface IssuanceLaneService {
+
+    /**
+     * Runs an issue call in the lane of its (branch, book type, subtype). Calls in the same
+     * lane run one at a time in arrival order; calls in different lanes never wait on each
+     * other. The lane is held until the issuance has returned, so a transactional issue
+     * commits before the next one in its lane starts.
+     */
+    <T> T issue(String branchId, ParentBookType parentBookType, Object subtype, Supplier<T> issuance);
+}
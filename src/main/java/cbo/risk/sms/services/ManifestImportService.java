@@ -0,0 +1,10 @@
+package cbo.risk.sms.services;
+
+import cbo.risk.sms.dtos.ManifestImportResultDTO;
+import org.springframework.web.multipart.MultipartFile;
+
+public interface ManifestImportService {
+
+    // Registers every batch row of an XLSX delivery manifest; each row succeeds or fails on its own
+    ManifestImportResultDTO importManifest(MultipartFile file, String createdBy, String createdById);
+}
@@ -6,17 +6,28 @@ import cbo.risk.sms.enums.PassBookType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Optional;
 
 public interface PassBookService {
     ResponseDTO<RequestPassBookDTO> issueAvailablePassBook(RequestPassBookDTO request);
+    ResponseDTO<List<RequestPassBookDTO>> issueAvailablePassBooks(RequestPassBookDTO request, int quantity); // One transaction for all
+    ResponseDTO<PassBookDTO> reserveAvailablePassBook(RequestPassBookDTO request); // Holds it until confirmed or expired
+    ResponseDTO<RequestPassBookDTO> confirmPassBookReservation(Long id, RequestPassBookDTO request);
+    ResponseDTO<List<Long>> receivePassBooks(BulkReceiveDTO receive); // Set-based, all or nothing
 
     // CRUD Operations
     PassBookDTO create(PassBookCreateDTO createDTO);
     Optional<PassBookDTO> findById(Long id);
     List<PassBookDTO> findAll();
+    void streamAll(OutputStream out) throws IOException; // findAll as a JSON array, written row by row
     Page<PassBookDTO> findAll(Pageable pageable);
+    // Keyset pagination; pass the returned nextCursor back to read the next page
+    KeysetPageDTO<PassBookDTO> scroll(String cursor, Integer size);
+    KeysetPageDTO<PassBookDTO> scrollByBranch(String branchId, String status, String cursor, Integer size);
+    KeysetPageDTO<PassBookDTO> scrollByParent(Long parentId, String cursor, Integer size);
     PassBookDTO update(Long id, PassBookUpdateDTO updateDTO);
     void delete(Long id);
 
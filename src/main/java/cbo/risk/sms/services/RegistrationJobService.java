@@ -0,0 +1,15 @@
+package cbo.risk.sms.services;
+
+import cbo.risk.sms.dtos.BatchRegistrationDTO;
+import cbo.risk.sms.dtos.RegistrationJobDTO;
+import cbo.risk.sms.enums.ParentBookType;
+
+import java.util.Optional;
+
+public interface RegistrationJobService {
+
+    // Queues the registration and returns immediately with the job's id and state
+    RegistrationJobDTO submit(ParentBookType parentBookType, BatchRegistrationDTO registrationDTO);
+
+    Optional<RegistrationJobDTO> findJob(String jobId);
+}
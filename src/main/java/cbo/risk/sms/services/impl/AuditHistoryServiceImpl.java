@@ -0,0 +1,188 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.dtos.ItemRevisionDTO;
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.exceptions.ResourceNotFoundException;
+import cbo.risk.sms.models.*;
+import cbo.risk.sms.repositories.BulkRegistrationAuditRepository;
+import cbo.risk.sms.repositories.CheckBookRepository;
+import cbo.risk.sms.repositories.CpoRepository;
+import cbo.risk.sms.repositories.PassBookRepository;
+import cbo.risk.sms.services.AuditHistoryService;
+import cbo.risk.sms.utils.SerialRange;
+import org.hibernate.envers.AuditReader;
+import org.hibernate.envers.AuditReaderFactory;
+import org.hibernate.envers.DefaultRevisionEntity;
+import org.hibernate.envers.RevisionType;
+import org.hibernate.envers.query.AuditEntity;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+@Service
+public class AuditHistoryServiceImpl implements AuditHistoryService {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private BulkRegistrationAuditRepository bulkRegistrationAuditRepository;
+
+    @Autowired
+    private CheckBookRepository checkBookRepository;
+
+    @Autowired
+    private CpoRepository cpoRepository;
+
+    @Autowired
+    private PassBookRepository passBookRepository;
+
+    /**
+     * Item revisions from the item's _aud table. Items registered in bulk have no ADD row
+     * there, so their registration is rebuilt from the batch's BulkRegistrationAudit entry.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ItemRevisionDTO> getItemHistory(ParentBookType itemType, Long itemId) {
+        AuditReader reader = AuditReaderFactory.get(entityManager);
+
+        List<?> rows = reader.createQuery()
+                .forRevisionsOfEntity(entityClass(itemType), false, true)
+                .add(AuditEntity.id().eq(itemId))
+                .addOrder(AuditEntity.revisionNumber().asc())
+                .getResultList();
+
+        List<ItemRevisionDTO> history = new ArrayList<>();
+        boolean hasAddRevision = false;
+        for (Object row : rows) {
+            Object[] values = (Object[]) row;
+            DefaultRevisionEntity revision = (DefaultRevisionEntity) values[1];
+            RevisionType revisionType = (RevisionType) values[2];
+
+            ItemRevisionDTO dto = toRevisionDTO(values[0]);
+            dto.setRevision(revision.getId());
+            dto.setRevisionDate(toLocalDateTime(revision.getRevisionDate()));
+            dto.setRevisionType(revisionType.name());
+            dto.setSource("ITEM");
+            history.add(dto);
+            hasAddRevision |= revisionType == RevisionType.ADD;
+        }
+
+        if (!hasAddRevision) {
+            // Identity of the item: current row, or its last audited state if it was deleted
+            Optional<ItemRevisionDTO> item = findCurrent(itemType, itemId);
+            if (item.isEmpty() && !history.isEmpty()) {
+                item = Optional.of(history.get(history.size() - 1));
+            }
+            item.flatMap(current -> registrationRevision(reader, itemType, current))
+                    .ifPresent(registration -> history.add(0, registration));
+        }
+
+        if (history.isEmpty()) {
+            throw new ResourceNotFoundException(itemType.name(), "id", itemId);
+        }
+        return history;
+    }
+
+    // ============== HELPER METHODS ==============
+
+    private Optional<ItemRevisionDTO> registrationRevision(AuditReader reader, ParentBookType itemType,
+                                                           ItemRevisionDTO item) {
+        if (item.getBookParentId() == null) {
+            return Optional.empty();
+        }
+        return bulkRegistrationAuditRepository.findFirstByBookParentIdOrderByIdAsc(item.getBookParentId())
+                .filter(audit -> audit.getItemType() == itemType)
+                .filter(audit -> {
+                    SerialRange range = SerialRange.tryParse(audit.getStartSerial(), audit.getEndSerial());
+                    return range != null && range.contains(item.getSerialNumber());
+                })
+                .map(audit -> {
+                    ItemRevisionDTO dto = new ItemRevisionDTO();
+                    dto.setRevision(audit.getRev());
+                    dto.setRevisionDate(toLocalDateTime(reader.getRevisionDate(audit.getRev())));
+                    dto.setRevisionType(RevisionType.ADD.name());
+                    dto.setSource("BULK_REGISTRATION");
+                    dto.setItemId(item.getItemId());
+                    dto.setBookParentId(audit.getBookParentId());
+                    dto.setSerialNumber(item.getSerialNumber());
+                    dto.setEndSerialNumber(item.getEndSerialNumber());
+                    dto.setBranchId(item.getBranchId());
+                    dto.setLastUpdatedBy(audit.getCreatedBy());
+                    return dto;
+                });
+    }
+
+    private Optional<ItemRevisionDTO> findCurrent(ParentBookType itemType, Long itemId) {
+        return switch (itemType) {
+            case CHECK_BOOK -> checkBookRepository.findById(itemId).map(this::toRevisionDTO);
+            case CPO -> cpoRepository.findById(itemId).map(this::toRevisionDTO);
+            case PASS_BOOK -> passBookRepository.findById(itemId).map(this::toRevisionDTO);
+        };
+    }
+
+    private Class<?> entityClass(ParentBookType itemType) {
+        return switch (itemType) {
+            case CHECK_BOOK -> CheckBook.class;
+            case CPO -> Cpo.class;
+            case PASS_BOOK -> PassBook.class;
+        };
+    }
+
+    private ItemRevisionDTO toRevisionDTO(Object entity) {
+        ItemRevisionDTO dto = new ItemRevisionDTO();
+        if (entity instanceof CheckBook checkBook) {
+            dto.setItemId(checkBook.getId());
+            dto.setBookParentId(parentId(checkBook.getBookParent()));
+            dto.setSerialNumber(checkBook.getStartSerialNumber());
+            dto.setEndSerialNumber(checkBook.getEndSerialNumber());
+            dto.setBranchId(checkBook.getBranchId());
+            dto.setIssuedDate(checkBook.getIssuedDate());
+            dto.setReceivedDate(checkBook.getReceivedDate());
+            dto.setReturnedDate(checkBook.getReturnedDate());
+            dto.setIssuedBy(checkBook.getIssuedBy());
+            dto.setReceivedBy(checkBook.getReceivedBy());
+            dto.setLastUpdatedBy(checkBook.getLastUpdatedBy());
+        } else if (entity instanceof Cpo cpo) {
+            dto.setItemId(cpo.getId());
+            dto.setBookParentId(parentId(cpo.getBookParent()));
+            dto.setSerialNumber(cpo.getSerialNumber());
+            dto.setBranchId(cpo.getBranchId());
+            dto.setIssuedDate(cpo.getIssuedDate());
+            dto.setReceivedDate(cpo.getReceivedDate());
+            dto.setReturnedDate(cpo.getReturnedDate());
+            dto.setIssuedBy(cpo.getIssuedBy());
+            dto.setReceivedBy(cpo.getReceivedBy());
+            dto.setLastUpdatedBy(cpo.getLastUpdatedBy());
+        } else if (entity instanceof PassBook passBook) {
+            dto.setItemId(passBook.getId());
+            dto.setBookParentId(parentId(passBook.getBookParent()));
+            dto.setSerialNumber(passBook.getSerialNumber());
+            dto.setBranchId(passBook.getBranchId());
+            dto.setIssuedDate(passBook.getIssuedDate());
+            dto.setReceivedDate(passBook.getReceivedDate());
+            dto.setReturnedDate(passBook.getReturnedDate());
+            dto.setIssuedBy(passBook.getIssuedBy());
+            dto.setReceivedBy(passBook.getReceivedBy());
+            dto.setLastUpdatedBy(passBook.getLastUpdatedBy());
+        }
+        return dto;
+    }
+
+    private Long parentId(BookParent parent) {
+        return parent != null ? parent.getId() : null;
+    }
+
+    private LocalDateTime toLocalDateTime(Date date) {
+        return date != null ? LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault()) : null;
+    }
+}
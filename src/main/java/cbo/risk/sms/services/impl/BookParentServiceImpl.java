@@ -7,16 +7,28 @@ import cbo.risk.sms.exceptions.BusinessRuleException;
 import cbo.risk.sms.models.*;
 import cbo.risk.sms.repositories.*;
 import cbo.risk.sms.services.BookParentService;
+import cbo.risk.sms.utils.BulkAuditContext;
+import cbo.risk.sms.utils.KeysetCursor;
+import cbo.risk.sms.utils.RegistrationProgress;
+import cbo.risk.sms.utils.SerialRange;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.envers.AuditReaderFactory;
+import org.hibernate.envers.DefaultRevisionEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -34,25 +46,54 @@ public class BookParentServiceImpl implements BookParentService {
     @Autowired
     private PassBookRepository passBookRepository;
 
+    @Autowired
+    private BulkCopyRepository bulkCopyRepository;
+
+    @Autowired
+    private BulkRegistrationAuditRepository bulkRegistrationAuditRepository;
+
+    @Autowired
+    private SerialRangeIndex serialRangeIndex;
+
+    @Autowired
+    private CpoPrefetchBuffer cpoPrefetchBuffer;
+
+    @Autowired
+    private JsonArrayStreamWriter jsonArrayStreamWriter;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Children persisted between flush/clear cycles during batch registration
+    @Value("${sms.registration.chunk-size:1000}")
+    private int chunkSize;
+
+    // Record one BulkRegistrationAudit per batch instead of an audit row per registered item
+    @Value("${sms.audit.bulk-registration:true}")
+    private boolean bulkAuditEnabled;
+
     @Override
     @Transactional
     public BatchResponseDTO registerCheckBookBatch(BatchRegistrationDTO registrationDTO) {
         log.info("Registering CheckBook batch: {} to {}, {} leaves",
                 registrationDTO.getStartSerial(), registrationDTO.getEndSerial(),
                 registrationDTO.getCheckBookLeaveType());
+        long startedAt = System.nanoTime();
 
         // 1. Validate batch registration
         validateBatchRegistration(registrationDTO);
+        if (registrationDTO.getStorageMode() == StorageMode.COMPRESSED) {
+            throw new BusinessRuleException("Compressed storage is only supported for CPO and PassBook batches");
+        }
 
         // 2. Calculate number of checkbooks based on leaves per checkbook
         int leavesPerCheckBook = registrationDTO.getCheckBookLeaveType().getNumberOfLeaves();
 
-        // Extract start and end numbers
-        int startNum = extractNumber(registrationDTO.getStartSerial());
-        int endNum = extractNumber(registrationDTO.getEndSerial());
+        // Parse the page range once (prefix, padding and numeric bounds)
+        SerialRange pages = SerialRange.parse(registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
 
         // Calculate total pages and number of checkbooks
-        int totalPages = endNum - startNum + 1;
+        int totalPages = Math.toIntExact(pages.size());
 
         // Validate that total pages is divisible by leaves per checkbook
         if (totalPages % leavesPerCheckBook != 0) {
@@ -68,19 +109,22 @@ public class BookParentServiceImpl implements BookParentService {
         BookParent parent = createCheckBookParent(registrationDTO);
 parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
         BookParent savedParent = bookParentRepository.save(parent);
+        serialRangeIndex.register(savedParent.getId(), pages);
 
         // 4. Generate individual checkbooks with their own start/end serial ranges
-        List<CheckBook> checkBooks = generateCheckBooksFromRange(
-                registrationDTO.getStartSerial(),
-                registrationDTO.getEndSerial(),
-                leavesPerCheckBook,
-                savedParent,
-                registrationDTO
-        );
+        int created;
+        if (useBulkLoad(registrationDTO)) {
+            created = bulkCopyRepository.copyCheckBooks(savedParent, registrationDTO,
+                    pages, leavesPerCheckBook, numberOfCheckBooks);
+        } else {
+            created = writeCheckBooksFromRange(pages, leavesPerCheckBook, savedParent, registrationDTO);
+        }
+
+        recordBulkAudit(savedParent, registrationDTO, ParentBookType.CHECK_BOOK, leavesPerCheckBook, created);
 
-        checkBookRepository.saveAll(checkBooks);
         log.info("Created {} CheckBooks for parent ID: {}. Each with {} leaves.",
-                checkBooks.size(), savedParent.getId(), leavesPerCheckBook);
+                created, savedParent.getId(), leavesPerCheckBook);
+        logThroughput("CheckBook", created, startedAt);
 
         return createBatchResponse(savedParent, "CHECKBOOK",numberOfCheckBooks);
     }
@@ -89,7 +133,7 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
     public BatchResponseDTO registerCpoBatch(BatchRegistrationDTO registrationDTO) {
         log.info("Registering CPO batch: {} to {}",
                 registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
-        System.out.println("1");
+        long startedAt = System.nanoTime();
         validateBatchRegistration(registrationDTO);
 
         // 1. Create Parent
@@ -97,32 +141,27 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
 
         BookParent savedParent = bookParentRepository.save(parent);
 
-        // 2. Generate serial numbers and create CPO children
-        List<String> serials = generateSerials(
-                registrationDTO.getStartSerial(),
-                registrationDTO.getEndSerial()
-        );
+        // 2. Generate serial numbers and create CPO children chunk by chunk
+        SerialRange serials = SerialRange.parse(registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
+        serialRangeIndex.register(savedParent.getId(), serials);
 
-        List<Cpo> cpos = new ArrayList<>();
-        for (String serial : serials) {
-            Cpo cpo = new Cpo();
-            cpo.setSerialNumber(serial); // Assuming you added serialNumber to Cpo model
-            cpo.setBookParent(savedParent);
-            cpo.setCreatedBy(registrationDTO.getCreatedBy());
-            cpo.setCreatedById(registrationDTO.getCreatedById());
-            cpo.setLastUpdatedById(registrationDTO.getLastUpdatedById());
-            cpo.setLastUpdatedBy(registrationDTO.getLastUpdatedBy());
-            cpo.setBranchId(registrationDTO.getBranchId());
-            cpo.setSubProcessId(registrationDTO.getSubProcessId());
-            cpo.setProcessId(registrationDTO.getProcessId());
-
-            cpos.add(cpo);
+        int created;
+        if (savedParent.isCompressed()) {
+            // CPO rows are created one at a time as they are issued
+            created = 0;
+        } else if (useBulkLoad(registrationDTO)) {
+            created = bulkCopyRepository.copyCpos(savedParent, registrationDTO, serials);
+        } else {
+            created = writeCpos(savedParent, registrationDTO, serials);
         }
 
-        cpoRepository.saveAll(cpos);
-        log.info("Created {} CPOs for parent ID: {}", cpos.size(), savedParent.getId());
+        recordBulkAudit(savedParent, registrationDTO, ParentBookType.CPO, 1, created);
+        cpoPrefetchBuffer.invalidate(savedParent.getBranchId());
+
+        log.info("Created {} CPOs for parent ID: {}", created, savedParent.getId());
+        logThroughput("CPO", created, startedAt);
 
-        return createBatchResponse(savedParent, "CPO", cpos.size());
+        return createBatchResponse(savedParent, "CPO", created);
     }
 
     @Override
@@ -130,43 +169,100 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
     public BatchResponseDTO registerPassBookBatch(BatchRegistrationDTO registrationDTO) {
         log.info("Registering PassBook batch: {} to {}",
                 registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
+        long startedAt = System.nanoTime();
 
         validateBatchRegistration(registrationDTO);
-        System.out.println("1");
         // 1. Create Parent
         BookParent parent = createParent(registrationDTO);
         parent.setPassCheckType(registrationDTO.getPassBookType().name());
         parent.setPassBookType(registrationDTO.getPassBookCategory().name());
         BookParent savedParent = bookParentRepository.save(parent);
 
-        // 2. Generate serial numbers and create PassBook children
-        List<String> serials = generateSerials(
-                registrationDTO.getStartSerial(),
-                registrationDTO.getEndSerial()
-        );
+        // 2. Generate serial numbers and create PassBook children chunk by chunk
+        SerialRange serials = SerialRange.parse(registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
+        serialRangeIndex.register(savedParent.getId(), serials);
 
-        List<PassBook> passBooks = new ArrayList<>();
-        for (String serial : serials) {
-            PassBook passBook = new PassBook();
-            passBook.setSerialNumber(serial); // Assuming you added serialNumber to PassBook model
-            passBook.setBookParent(savedParent);
-            passBook.setPassBookType(PassBookType.valueOf(registrationDTO.getPassBookType().name()));
-            passBook.setPassBookCategory(PassBookCategory.valueOf(registrationDTO.getPassBookCategory().name()));
-            passBook.setCreatedBy(registrationDTO.getCreatedBy());
-            passBook.setCreatedById(registrationDTO.getCreatedById());
-            passBook.setLastUpdatedById(registrationDTO.getLastUpdatedById());
-            passBook.setLastUpdatedBy(registrationDTO.getLastUpdatedBy());
-            passBook.setBranchId(registrationDTO.getBranchId());
-            passBook.setSubProcessId(registrationDTO.getSubProcessId());
-            passBook.setProcessId(registrationDTO.getProcessId());
+        int created;
+        if (savedParent.isCompressed()) {
+            // PassBook rows are created one at a time as they are issued
+            created = 0;
+        } else if (useBulkLoad(registrationDTO)) {
+            created = bulkCopyRepository.copyPassBooks(savedParent, registrationDTO, serials);
+        } else {
+            created = writePassBooks(savedParent, registrationDTO, serials);
+        }
+
+        recordBulkAudit(savedParent, registrationDTO, ParentBookType.PASS_BOOK, 1, created);
+
+        log.info("Created {} PassBooks for parent ID: {}", created, savedParent.getId());
+        logThroughput("PassBook", created, startedAt);
+
+        return createBatchResponse(savedParent, "PASSBOOK", created);
+    }
 
-            passBooks.add(passBook);
+    /**
+     * Works out what registering the batch would produce from the range bounds alone:
+     * item count, first and last item serials and overlaps with registered batches.
+     * No serial list is built and nothing is saved, so the cost does not depend on range size.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public BatchPreviewDTO previewRegistration(BatchRegistrationDTO registrationDTO) {
+        BatchPreviewDTO preview = new BatchPreviewDTO();
+        ParentBookType parentBookType = registrationDTO.getParentBookType();
+        preview.setParentBookType(parentBookType.name());
+        preview.setStartSerial(registrationDTO.getStartSerial());
+        preview.setEndSerial(registrationDTO.getEndSerial());
+        preview.setStorageMode((registrationDTO.getStorageMode() != null
+                ? registrationDTO.getStorageMode() : StorageMode.MATERIALIZED).name());
+
+        SerialRange serials;
+        try {
+            serials = SerialRange.parse(registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
+        } catch (IllegalArgumentException e) {
+            preview.getProblems().add(e.getMessage());
+            return preview;
+        }
+        preview.setSerialPrefix(serials.getPrefix());
+        preview.setTotalSerials(serials.size());
+
+        int serialsPerItem = 1;
+        if (parentBookType == ParentBookType.CHECK_BOOK) {
+            if (registrationDTO.getCheckBookLeaveType() == null) {
+                preview.getProblems().add("CheckBook leave type is required");
+                return preview;
+            }
+            serialsPerItem = registrationDTO.getCheckBookLeaveType().getNumberOfLeaves();
+            if (registrationDTO.getStorageMode() == StorageMode.COMPRESSED) {
+                preview.getProblems().add("Compressed storage is only supported for CPO and PassBook batches");
+            }
+        }
+        preview.setSerialsPerItem(serialsPerItem);
+
+        long items = serials.size() / serialsPerItem;
+        long leftover = serials.size() % serialsPerItem;
+        preview.setItemsToCreate(items);
+        preview.setLeftoverSerials(leftover);
+        if (leftover != 0) {
+            preview.getProblems().add(String.format(
+                    "Total pages %d is not divisible by %d leaves per checkbook", serials.size(), serialsPerItem));
+        }
+        if (serials.size() > Integer.MAX_VALUE) {
+            preview.getProblems().add("Range is too large to register as one batch");
         }
 
-        passBookRepository.saveAll(passBooks);
-        log.info("Created {} PassBooks for parent ID: {}", passBooks.size(), savedParent.getId());
+        if (items > 0) {
+            long lastItemOffset = (items - 1) * serialsPerItem;
+            preview.setFirstItemStartSerial(serials.serialAt(0));
+            preview.setFirstItemEndSerial(serials.serialAt(serialsPerItem - 1));
+            preview.setLastItemStartSerial(serials.serialAt(lastItemOffset));
+            preview.setLastItemEndSerial(serials.serialAt(lastItemOffset + serialsPerItem - 1));
+        }
 
-        return createBatchResponse(savedParent, "PASSBOOK", passBooks.size());
+        preview.getConflicts().addAll(
+                findConflictingSerials(registrationDTO.getStartSerial(), registrationDTO.getEndSerial()));
+        preview.setRegistrable(preview.getProblems().isEmpty() && preview.getConflicts().isEmpty() && items > 0);
+        return preview;
     }
 
    @Override
@@ -301,9 +397,11 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
             throw new ResourceNotFoundException("Book", "serial number", returnRequest.getSerialNumber());
         }
 
-        // Update parent's used count (decrement)
-        parent.setUsed(parent.getUsed() - 1);
-        if (parent.getUsed() < 0) parent.setUsed(0); // Safety check
+        // Update parent's used count (decrement, never below 0)
+        if (bookParentRepository.adjustUsed(parent.getId(), -1) == 0) {
+            log.warn("Parent used count already 0, not decremented. Parent ID: {}", parent.getId());
+        }
+        entityManager.refresh(parent);
         parent.setLastUpdatedBy(returnRequest.getReturnedBy());
         bookParentRepository.save(parent);
 
@@ -313,94 +411,64 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
         return createBatchResponse(parent, bookType, 0);
     }
 
-    // ============== SEQUENTIAL ISSUANCE VALIDATION ==============
-
-//    private void validateSequentialIssuance(CheckBook checkBook, String branchId) {
-//        BookParent parent = checkBook.getBookParent();
-//        List<CheckBook> allBooks = checkBookRepository.findByBookParentOrderBySerialNumberAsc(parent);
-//
-//        // Find the current book's position
-//        int currentIndex = -1;
-//        for (int i = 0; i < allBooks.size(); i++) {
-//            if (allBooks.get(i).getSerialNumber().equals(checkBook.getSerialNumber())) {
-//                currentIndex = i;
-//                break;
-//            }
-//        }
-//
-//        if (currentIndex > 0) {
-//            // Check if previous book is issued
-//            CheckBook previousBook = allBooks.get(currentIndex - 1);
-//            if (previousBook.getIssuedDate() == null) {
-//                throw new BusinessRuleException(
-//                        String.format("Cannot issue serial %s. Previous serial %s must be issued first.",
-//                                checkBook.getSerialNumber(), previousBook.getSerialNumber())
-//                );
-//            }
-//        }
-//    }
-//
-//    private void validateSequentialIssuance(Cpo cpo, String branchId) {
-//        BookParent parent = cpo.getBookParent();
-//        List<Cpo> allBooks = cpoRepository.findByBookParentOrderBySerialNumberAsc(parent);
-//
-//        int currentIndex = -1;
-//        for (int i = 0; i < allBooks.size(); i++) {
-//            if (allBooks.get(i).getSerialNumber().equals(cpo.getSerialNumber())) {
-//                currentIndex = i;
-//                break;
-//            }
-//        }
-//
-//        if (currentIndex > 0) {
-//            Cpo previousBook = allBooks.get(currentIndex - 1);
-//            if (previousBook.getIssuedDate() == null) {
-//                throw new BusinessRuleException(
-//                        String.format("Cannot issue serial %s. Previous serial %s must be issued first.",
-//                                cpo.getSerialNumber(), previousBook.getSerialNumber())
-//                );
-//            }
-//        }
-//    }
-
-    private void validateSequentialIssuance(PassBook passBook, String branchId) {
-        BookParent parent = passBook.getBookParent();
-        List<PassBook> allBooks = passBookRepository.findByBookParentOrderBySerialNumberAsc(parent);
+    // ============== HELPER METHODS ==============
 
-        int currentIndex = -1;
-        for (int i = 0; i < allBooks.size(); i++) {
-            if (allBooks.get(i).getSerialNumber().equals(passBook.getSerialNumber())) {
-                currentIndex = i;
+    /**
+     * Offset of the batch's next issuable serial, or -1 if it has none left. Compressed
+     * batches read it from the bitmap, starting at the cursor. Everything else reads the first
+     * free row from the (book_parent_id, serial_value) index. For CPOs and PassBooks the read
+     * starts at the cursor, which only bounds the search: issueItem issues by id without moving
+     * it. CheckBooks are claimed with SKIP LOCKED and keep no cursor.
+     */
+    private long firstIssuableOffset(BookParent parent, SerialRange serials) {
+        if (parent.isCompressed()) {
+            return parent.nextUnissuedOffset();
+        }
+        Long value;
+        switch (parent.getParentBookType()) {
+            case CHECK_BOOK:
+                value = checkBookRepository.findFirstIssuableSerialValue(parent.getId());
                 break;
-            }
+            case CPO:
+                value = cpoRepository.findFirstIssuableSerialValue(
+                        parent.getId(), serials.getStart() + parent.issueCursor());
+                break;
+            default:
+                value = passBookRepository.findFirstIssuableSerialValue(
+                        parent.getId(), serials.getStart() + parent.issueCursor());
         }
+        return value != null ? value - serials.getStart() : -1;
+    }
 
-        if (currentIndex > 0) {
-            PassBook previousBook = allBooks.get(currentIndex - 1);
-            if (previousBook.getIssuedDate() == null) {
-                throw new BusinessRuleException(
-                        String.format("Cannot issue serial %s. Previous serial %s must be issued first.",
-                                passBook.getSerialNumber(), previousBook.getSerialNumber())
-                );
+    // Accepts the enum names as well as the spellings used by older clients, e.g. CHECKBOOK
+    private ParentBookType parseBookType(String bookType) {
+        String normalized = bookType == null ? "" : bookType.trim().toUpperCase().replace("_", "")
+                .replace("-", "").replace(" ", "");
+        for (ParentBookType type : ParentBookType.values()) {
+            if (type.name().replace("_", "").equals(normalized)) {
+                return type;
             }
         }
+        throw new BusinessRuleException("Invalid book type: " + bookType);
     }
 
-    // ============== HELPER METHODS ==============
-
     private BookParent createParent(BatchRegistrationDTO registrationDTO) {
         BookParent parent = new BookParent();
         parent.setStartingSerial(registrationDTO.getStartSerial());
         parent.setEndingSerial(registrationDTO.getEndSerial());
 
-        // Calculate number of pads
-        List<String> serials = generateSerials(
-                registrationDTO.getStartSerial(),
-                registrationDTO.getEndSerial()
-        );
-        parent.setNumOfPad(serials.size());
+        // Calculate number of pads (range already validated as numeric and ordered)
+        SerialRange serials = SerialRange.parse(registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
+        parent.setNumOfPad(Math.toIntExact(serials.size()));
         parent.setUsed(0);
 
+        if (registrationDTO.getStorageMode() == StorageMode.COMPRESSED) {
+            parent.setStorageMode(StorageMode.COMPRESSED);
+            parent.setIssuedPositions(new byte[(parent.getNumOfPad() + 7) / 8]);
+        } else {
+            parent.setStorageMode(StorageMode.MATERIALIZED);
+        }
+
         parent.setBranchId(registrationDTO.getBranchId());
         parent.setSubProcessId(registrationDTO.getSubProcessId());
         parent.setProcessId(registrationDTO.getProcessId());
@@ -419,20 +487,13 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
 
         // Calculate number of checkbooks based on leaves
         int leavesPerCheckBook = registrationDTO.getCheckBookLeaveType().getNumberOfLeaves();
-        int startNum = extractNumber(registrationDTO.getStartSerial());
-        int endNum = extractNumber(registrationDTO.getEndSerial());
-        int totalPages = endNum - startNum + 1;
-
-        if (totalPages % leavesPerCheckBook != 0) {
-            throw new BusinessRuleException(
-                    String.format("Total pages %d is not divisible by %d leaves per checkbook",
-                            totalPages, leavesPerCheckBook));
-        }
-
+        SerialRange pages = SerialRange.parse(registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
+        int totalPages = Math.toIntExact(pages.size());
         int numberOfCheckBooks = totalPages / leavesPerCheckBook;
 
         parent.setNumOfPad(numberOfCheckBooks); // Number of checkbooks
         parent.setUsed(0);
+        parent.setStorageMode(StorageMode.MATERIALIZED);
 
         parent.setNumOfPad(numberOfCheckBooks);
 
@@ -453,53 +514,55 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
         return parent;
     }
 
-    private List<String> generateSerials(String start, String end) {
-        List<String> serials = new ArrayList<>();
+    private void validateBatchRegistration(BatchRegistrationDTO dto) {
+        if (dto.getStartSerial() == null || dto.getEndSerial() == null) {
+            throw new BusinessRuleException("Start and end serials are required");
+        }
 
-        try {
-            // Extract numeric parts
-            String prefix = start.replaceAll("\\d+", "");
-            String suffix = start.substring(prefix.length());
+        // Check the whole range against registered batches instead of serial by serial
+        List<String> conflicts = findConflictingSerials(dto.getStartSerial(), dto.getEndSerial());
+        if (!conflicts.isEmpty()) {
+            throw new BusinessRuleException(
+                    String.format("Serial numbers already exist in the system: %s",
+                            String.join(", ", conflicts))
+            );
+        }
+    }
 
-            int startNum = Integer.parseInt(suffix);
-            int endNum = Integer.parseInt(end.substring(prefix.length()));
+    /**
+     * Returns the colliding part of every registered batch that overlaps the given range.
+     * Every CheckBook, CPO and PassBook belongs to a BookParent, so one overlap check per
+     * batch covers all three tables and the cost grows with batches, not serials.
+     */
+    private List<String> findConflictingSerials(String startSerial, String endSerial) {
+        SerialRange requested;
+        try {
+            requested = SerialRange.parse(startSerial, endSerial);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessRuleException(e.getMessage());
+        }
 
-            if (endNum < startNum) {
-                throw new BusinessRuleException("End serial must be greater than start serial");
+        List<String> conflicts = new ArrayList<>();
+        if (serialRangeIndex.isLoaded()) {
+            for (SerialRange overlap : serialRangeIndex.findOverlaps(requested)) {
+                conflicts.add(overlap.toString());
             }
+            return conflicts;
+        }
 
-            for (int i = startNum; i <= endNum; i++) {
-                serials.add(prefix + String.format("%0" + suffix.length() + "d", i));
+        // Index not loaded yet (startup): check candidate batches in the database
+        for (BookParent existing : bookParentRepository.findByStartingSerialPrefix(requested.getPrefix())) {
+            SerialRange existingRange = SerialRange.tryParse(existing.getStartingSerial(), existing.getEndingSerial());
+            if (existingRange == null) {
+                continue;
             }
-
-        } catch (NumberFormatException e) {
-            // If not numeric, just add the single range
-            serials.add(start);
-            if (!start.equals(end)) {
-                throw new BusinessRuleException(
-                        "Only numeric serial ranges are supported for batch registration");
+            SerialRange overlap = requested.intersect(existingRange);
+            if (overlap != null) {
+                conflicts.add(overlap.toString());
             }
         }
 
-        return serials;
-    }
-
-    private void validateBatchRegistration(BatchRegistrationDTO dto) {
-        if (dto.getStartSerial() == null || dto.getEndSerial() == null) {
-            throw new BusinessRuleException("Start and end serials are required");
-        }
-
-        // Check if any serial in range already exists
-        List<String> serials = generateSerials(dto.getStartSerial(), dto.getEndSerial());
-        for (String serial : serials) {
-            if (checkBookRepository.existsByStartSerialNumber(serial) ||
-                    cpoRepository.existsBySerialNumber(serial) ||
-                    passBookRepository.existsBySerialNumber(serial)) {
-                throw new BusinessRuleException(
-                        String.format("Serial number %s already exists in the system", serial)
-                );
-            }
-        }
+        return conflicts;
     }
 
 //    private void validateIssuance(CheckBook checkBook, IssueRequestDTO request) {
@@ -589,6 +652,15 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
         }
     }
 
+    /**
+     * Logs registration throughput so insert tuning can be compared across deployments
+     */
+    private void logThroughput(String itemType, int rows, long startedAtNanos) {
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startedAtNanos) / 1_000_000);
+        log.info("Registered {} {} rows in {} ms ({} rows/s)",
+                rows, itemType, elapsedMillis, rows * 1000L / elapsedMillis);
+    }
+
     private BatchResponseDTO createBatchResponse(BookParent parent, String bookType, int childrenCreated) {
         BatchResponseDTO response = new BatchResponseDTO();
         response.setParentId(parent.getId());
@@ -599,6 +671,8 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
         response.setUsed(parent.getUsed());
         response.setAvailable(parent.getNumOfPad() - parent.getUsed());
         response.setChildrenCreated(childrenCreated);
+        response.setStorageMode(parent.isCompressed()
+                ? StorageMode.COMPRESSED.name() : StorageMode.MATERIALIZED.name());
         response.setMessage(
                 String.format("%s batch registered successfully. %d items created.",
                         bookType, childrenCreated)
@@ -618,11 +692,39 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
         return bookParentRepository.findAll();
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(OutputStream out) throws IOException {
+        try (Stream<BookParent> parents = bookParentRepository.streamAll()) {
+            jsonArrayStreamWriter.write(out, parents, parent -> {
+                // Batches have no lazy associations, so a detached one serializes the same
+                entityManager.detach(parent);
+                return parent;
+            });
+        }
+    }
+
     @Override
     public List<BookParent> findByBranchId(String branchId) {
         return bookParentRepository.findByBranchId(branchId);
     }
 
+    @Override
+    public KeysetPageDTO<BookParent> scroll(String cursor, Integer size) {
+        int pageSize = KeysetCursor.pageSize(size);
+        List<BookParent> rows = bookParentRepository.findByIdGreaterThanOrderByIdAsc(
+                KeysetCursor.decode(cursor, 0L), KeysetCursor.limit(pageSize));
+        return KeysetCursor.page(rows, pageSize, BookParent::getId, parent -> parent);
+    }
+
+    @Override
+    public KeysetPageDTO<BookParent> scrollByBranch(String branchId, String cursor, Integer size) {
+        int pageSize = KeysetCursor.pageSize(size);
+        List<BookParent> rows = bookParentRepository.findByBranchIdAndIdGreaterThanOrderByIdAsc(
+                branchId, KeysetCursor.decode(cursor, 0L), KeysetCursor.limit(pageSize));
+        return KeysetCursor.page(rows, pageSize, BookParent::getId, parent -> parent);
+    }
+
     @Override
     @Transactional
     public void delete(Long id) {
@@ -637,78 +739,64 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
         }
 
         bookParentRepository.delete(parent);
+        SerialRange range = SerialRange.tryParse(parent.getStartingSerial(), parent.getEndingSerial());
+        if (range != null) {
+            serialRangeIndex.unregister(parent.getId(), range);
+        }
+        if (parent.getParentBookType() == ParentBookType.CPO) {
+            cpoPrefetchBuffer.invalidate(parent.getBranchId());
+        }
         log.info("Deleted BookParent with ID: {}", id);
     }
 
     @Override
     public Optional<BookParent> findBySerialRange(String serialNumber) {
+        if (serialRangeIndex.isLoaded()) {
+            return serialRangeIndex.findParentId(serialNumber).flatMap(bookParentRepository::findById);
+        }
         return bookParentRepository.findBySerialInRange(serialNumber);
     }
 
-   @Override
+    /**
+     * Answered from the batch's issue state, without loading its children: the serial range
+     * index finds the batch, and the serial is issuable only if it sits at the batch's first
+     * issuable position.
+     */
+    @Override
     public boolean isSerialIssuable(String serialNumber, String branchId) {
-//        // Check if serial exists and is not issued
-//        Optional<CheckBook> checkBook = checkBookRepository.findBySerialNumber(serialNumber);
-//        if (checkBook.isPresent()) {
-//            if (checkBook.get().getIssuedDate() != null) return false;
-//
-//            // Check sequential rule
-//            BookParent parent = checkBook.get().getBookParent();
-//            List<CheckBook> allBooks = checkBookRepository.findByBookParentOrderBySerialNumberAsc(parent);
-//
-//            int currentIndex = -1;
-//            for (int i = 0; i < allBooks.size(); i++) {
-//                if (Objects.equals(allBooks.get(i).getSerialNumber(), serialNumber)) {
-//                    currentIndex = i;
-//                    break;
-//                }
-//            }
-//
-//            if (currentIndex > 0) {
-//                CheckBook previousBook = allBooks.get(currentIndex - 1);
-//                return previousBook.getIssuedDate() != null;
-//            }
-//
-//            return currentIndex == 0; // First in sequence is always issuable
-//        }
-//
-//        // Similar logic for CPO and PassBook...
-//        return false;
-       return false;
+        Optional<BookParent> found = findBySerialRange(serialNumber);
+        if (found.isEmpty()) {
+            return false;
+        }
+        BookParent parent = found.get();
+        if (parent.isFinished() || !Objects.equals(parent.getBranchId(), branchId)) {
+            return false;
+        }
+        SerialRange serials = SerialRange.tryParse(parent.getStartingSerial(), parent.getEndingSerial());
+        if (serials == null) {
+            return false;
+        }
+        long offset = serials.offsetOf(serialNumber);
+        return offset >= 0 && offset == firstIssuableOffset(parent, serials);
     }
 
     @Override
     public String getNextIssuableSerial(String branchId, String bookType) {
-//        List<BookParent> parents = bookParentRepository.findByBranchId(branchId);
-//
-//        for (BookParent parent : parents) {
-//            switch (bookType.toUpperCase()) {
-//                case "CHECKBOOK":
-//                    List<CheckBook> checkBooks = checkBookRepository
-//                            .findByBookParentOrderBySerialNumberAsc(parent);
-//                    for (CheckBook book : checkBooks) {
-//                        if (book.getIssuedDate() == null) {
-//                            // Check sequential rule
-//                            int index = checkBooks.indexOf(book);
-//                            if (index == 0 || checkBooks.get(index - 1).getIssuedDate() != null) {
-//                                return book.getSerialNumber();
-//                            }
-//                        }
-//                    }
-//                    break;
-//
-//                case "CPO":
-//                    // Similar logic for CPO
-//                    break;
-//
-//                case "PASSBOOK":
-//                    // Similar logic for PassBook
-//                    break;
-//            }
-//        }
-//
-//        return null; // No issuable serial found
-       return null;
+        ParentBookType parentBookType = parseBookType(bookType);
+        List<BookParent> parents = bookParentRepository
+                .findByBranchIdAndParentBookTypeAndFinishedFalseOrderByIdAsc(branchId, parentBookType);
+
+        for (BookParent parent : parents) {
+            SerialRange serials = SerialRange.tryParse(parent.getStartingSerial(), parent.getEndingSerial());
+            if (serials == null) {
+                continue;
+            }
+            long offset = firstIssuableOffset(parent, serials);
+            if (offset >= 0) {
+                return serials.serialAt(offset);
+            }
+        }
+        return null; // No issuable serial found
     }
 
     @Override
@@ -732,28 +820,125 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
         return parent.getUsed() == parent.getNumOfPad();
     }
 
-    private List<CheckBook> generateCheckBooksFromRange(String startPageSerial, String endPageSerial,
-                                                        int leavesPerCheckBook, BookParent parent,
-                                                        BatchRegistrationDTO registrationDTO) {
-        List<CheckBook> checkBooks = new ArrayList<>();
+    /**
+     * COPY is only used when requested and the connection is PostgreSQL; otherwise
+     * registration falls back to the chunked JPA path.
+     */
+    private boolean useBulkLoad(BatchRegistrationDTO registrationDTO) {
+        if (!registrationDTO.isBulkLoad()) {
+            return false;
+        }
+        if (bulkCopyRepository.isSupported()) {
+            return true;
+        }
+        log.warn("Bulk load requested but the connection does not support COPY, using JPA inserts");
+        return false;
+    }
+
+    private int writeCpos(BookParent savedParent, BatchRegistrationDTO registrationDTO, SerialRange serials) {
+        suppressItemAudit(Cpo.class);
+        try {
+            return persistCpos(savedParent, registrationDTO, serials);
+        } finally {
+            BulkAuditContext.clear();
+        }
+    }
+
+    private int persistCpos(BookParent savedParent, BatchRegistrationDTO registrationDTO, SerialRange serials) {
+        BookParent parentRef = savedParent;
+        int created = 0;
+        for (long value = serials.getStart(); value <= serials.getEnd(); value++) {
+            Cpo cpo = new Cpo();
+            cpo.setSerialNumber(serials.format(value));
+            cpo.setBookParent(parentRef);
+            cpo.setCreatedBy(registrationDTO.getCreatedBy());
+            cpo.setCreatedById(registrationDTO.getCreatedById());
+            cpo.setLastUpdatedById(registrationDTO.getLastUpdatedById());
+            cpo.setLastUpdatedBy(registrationDTO.getLastUpdatedBy());
+            cpo.setBranchId(registrationDTO.getBranchId());
+            cpo.setSubProcessId(registrationDTO.getSubProcessId());
+            cpo.setProcessId(registrationDTO.getProcessId());
+
+            entityManager.persist(cpo);
+            if (++created % chunkSize == 0) {
+                parentRef = flushChunk(savedParent);
+                RegistrationProgress.report(created);
+            }
+        }
+        flushChunk(savedParent);
+        RegistrationProgress.report(created);
+
+        return created;
+    }
+
+    private int writePassBooks(BookParent savedParent, BatchRegistrationDTO registrationDTO, SerialRange serials) {
+        suppressItemAudit(PassBook.class);
+        try {
+            return persistPassBooks(savedParent, registrationDTO, serials);
+        } finally {
+            BulkAuditContext.clear();
+        }
+    }
 
-        int startNum = extractNumber(startPageSerial);
-        int endNum = extractNumber(endPageSerial);
-        String prefix = getPrefix(startPageSerial);
+    private int persistPassBooks(BookParent savedParent, BatchRegistrationDTO registrationDTO, SerialRange serials) {
+        PassBookType passBookType = PassBookType.valueOf(registrationDTO.getPassBookType().name());
+        PassBookCategory passBookCategory = PassBookCategory.valueOf(registrationDTO.getPassBookCategory().name());
 
-        int numberOfCheckBooks = (endNum - startNum + 1) / leavesPerCheckBook;
+        BookParent parentRef = savedParent;
+        int created = 0;
+        for (long value = serials.getStart(); value <= serials.getEnd(); value++) {
+            PassBook passBook = new PassBook();
+            passBook.setSerialNumber(serials.format(value));
+            passBook.setBookParent(parentRef);
+            passBook.setPassBookType(passBookType);
+            passBook.setPassBookCategory(passBookCategory);
+            passBook.setCreatedBy(registrationDTO.getCreatedBy());
+            passBook.setCreatedById(registrationDTO.getCreatedById());
+            passBook.setLastUpdatedById(registrationDTO.getLastUpdatedById());
+            passBook.setLastUpdatedBy(registrationDTO.getLastUpdatedBy());
+            passBook.setBranchId(registrationDTO.getBranchId());
+            passBook.setSubProcessId(registrationDTO.getSubProcessId());
+            passBook.setProcessId(registrationDTO.getProcessId());
+
+            entityManager.persist(passBook);
+            if (++created % chunkSize == 0) {
+                parentRef = flushChunk(savedParent);
+                RegistrationProgress.report(created);
+            }
+        }
+        flushChunk(savedParent);
+        RegistrationProgress.report(created);
 
+        return created;
+    }
+
+    private int writeCheckBooksFromRange(SerialRange pages, int leavesPerCheckBook, BookParent parent,
+                                         BatchRegistrationDTO registrationDTO) {
+        suppressItemAudit(CheckBook.class);
+        try {
+            return persistCheckBooks(pages, leavesPerCheckBook, parent, registrationDTO);
+        } finally {
+            BulkAuditContext.clear();
+        }
+    }
+
+    private int persistCheckBooks(SerialRange pages, int leavesPerCheckBook, BookParent parent,
+                                  BatchRegistrationDTO registrationDTO) {
+        int numberOfCheckBooks = Math.toIntExact(pages.size() / leavesPerCheckBook);
+
+        BookParent parentRef = parent;
+        int created = 0;
         for (int i = 0; i < numberOfCheckBooks; i++) {
-            int checkbookStartPage = startNum + (i * leavesPerCheckBook);
-            int checkbookEndPage = checkbookStartPage + leavesPerCheckBook - 1;
+            long checkbookStartOffset = (long) i * leavesPerCheckBook;
 
-            String checkbookStartSerial = prefix + checkbookStartPage;
-            String checkbookEndSerial = prefix + checkbookEndPage;
+            // Keeps the zero padding of the registered range
+            String checkbookStartSerial = pages.serialAt(checkbookStartOffset);
+            String checkbookEndSerial = pages.serialAt(checkbookStartOffset + leavesPerCheckBook - 1);
 
             CheckBook checkBook = new CheckBook();
             checkBook.setStartSerialNumber(checkbookStartSerial);  // Updated field name
             checkBook.setEndSerialNumber(checkbookEndSerial);      // Updated field name
-            checkBook.setBookParent(parent);
+            checkBook.setBookParent(parentRef);
             checkBook.setCheckBookType(registrationDTO.getCheckBookType());
             checkBook.setCheckBookLeaveType(registrationDTO.getCheckBookLeaveType());
             checkBook.setCreatedBy(registrationDTO.getCreatedBy());
@@ -765,28 +950,57 @@ parent.setCheckLeaveType(registrationDTO.getCheckBookLeaveType());
             checkBook.setSubProcessId(registrationDTO.getSubProcessId());
             checkBook.setProcessId(registrationDTO.getProcessId());
 
-            checkBooks.add(checkBook);
+            entityManager.persist(checkBook);
+            if (++created % chunkSize == 0) {
+                parentRef = flushChunk(parent);
+                RegistrationProgress.report(created);
+            }
         }
+        flushChunk(parent);
+        RegistrationProgress.report(created);
+
+        return created;
+    }
 
-        return checkBooks;
+    private void suppressItemAudit(Class<?> itemType) {
+        if (bulkAuditEnabled) {
+            BulkAuditContext.suppressInserts(itemType);
+        }
     }
 
     /**
-     * Extract numeric part from serial number
+     * Stores the range-level audit entry of a registration under the transaction's Envers
+     * revision; the audit history read side rebuilds each item's ADD revision from it.
      */
-    private int extractNumber(String serial) {
-        try {
-            String numericPart = serial.replaceAll("[^0-9]", "");
-            return Integer.parseInt(numericPart);
-        } catch (NumberFormatException e) {
-            throw new BusinessRuleException("Invalid serial number format: " + serial);
+    private void recordBulkAudit(BookParent parent, BatchRegistrationDTO registrationDTO,
+                                 ParentBookType itemType, int serialsPerItem, int itemCount) {
+        if (!bulkAuditEnabled) {
+            return;
         }
+        DefaultRevisionEntity revision = AuditReaderFactory.get(entityManager)
+                .getCurrentRevision(DefaultRevisionEntity.class, true);
+
+        BulkRegistrationAudit audit = new BulkRegistrationAudit();
+        audit.setRev(revision.getId());
+        audit.setBookParentId(parent.getId());
+        audit.setItemType(itemType);
+        audit.setStartSerial(parent.getStartingSerial());
+        audit.setEndSerial(parent.getEndingSerial());
+        audit.setSerialsPerItem(serialsPerItem);
+        audit.setItemCount(itemCount);
+        audit.setCreatedBy(registrationDTO.getCreatedBy());
+        audit.setCreatedById(registrationDTO.getCreatedById());
+        bulkRegistrationAuditRepository.save(audit);
     }
 
     /**
-     * Get prefix from serial number (e.g., "CB" from "CB1001")
+     * Writes the pending chunk and empties the persistence context so registration
+     * memory stays bounded by the chunk size. Returns a fresh reference to the parent
+     * for the next chunk's children.
      */
-    private String getPrefix(String serial) {
-        return serial.replaceAll("\\d+", "");
+    private BookParent flushChunk(BookParent parent) {
+        entityManager.flush();
+        entityManager.clear();
+        return entityManager.getReference(BookParent.class, parent.getId());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,50 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import cbo.risk.sms.models.BookParent;
+import cbo.risk.sms.repositories.BookParentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+/**
+ * Keeps a batch's used count in step with its issued children, shared by the CheckBook, CPO
+ * and PassBook services. Every change goes through {@link BookParentRepository#adjustUsed}, and
+ * the parent is refreshed afterwards so callers see the new used and finished values.
+ */
+@Component
+public class BookParentUsage {
+
+    private static final Logger log = LoggerFactory.getLogger(BookParentUsage.class);
+
+    @Autowired
+    private BookParentRepository bookParentRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Counts one more issued item on the parent; fails when the batch has no pads left
+    public void increment(BookParent parent) {
+        increment(parent, 1);
+    }
+
+    public void increment(BookParent parent, int count) {
+        if (bookParentRepository.adjustUsed(parent.getId(), count) == 0) {
+            throw new BusinessRuleException(
+                    String.format("BookParent %d has no pads left to issue", parent.getId()));
+        }
+        // Pick up the new used/finished values written by the update
+        entityManager.refresh(parent);
+    }
+
+    public void decrement(BookParent parent) {
+        if (bookParentRepository.adjustUsed(parent.getId(), -1) == 0) {
+            log.warn("Parent used count already 0, not decremented. Parent ID: {}", parent.getId());
+        }
+        entityManager.refresh(parent);
+    }
+}
@@ -13,27 +13,44 @@ import cbo.risk.sms.repositories.BookParentRepository;
 import cbo.risk.sms.repositories.CheckBookRepository;
 import cbo.risk.sms.repositories.RequestCheckBookRepository;
 import cbo.risk.sms.services.CheckBookService;
+import cbo.risk.sms.utils.KeysetCursor;
+import cbo.risk.sms.utils.SerialRange;
 import lombok.RequiredArgsConstructor;
 import org.apache.coyote.Request;
 import org.modelmapper.ModelMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cglib.core.Local;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class CheckBookServiceImpl implements CheckBookService {
 
     private static final Logger log = LoggerFactory.getLogger(CheckBookServiceImpl.class);
+
+    private static final int MAX_BULK_RECEIVE = 1000;
+
+    // How long a reserved item is held for its teller before the sweeper releases it
+    @Value("${sms.issuance.hold.ttl-seconds:300}")
+    private long holdTtlSeconds;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 @Autowired
     private  CheckBookRepository checkBookRepository;
 @Autowired
@@ -42,6 +59,12 @@ public class CheckBookServiceImpl implements CheckBookService {
     private  ModelMapper modelMapper;
 @Autowired
 private RequestCheckBookRepository requestCheckBookRepository;
+@Autowired
+    private SequentialIssuancePolicy sequentialIssuancePolicy;
+@Autowired
+    private JsonArrayStreamWriter jsonArrayStreamWriter;
+@Autowired
+    private BookParentUsage bookParentUsage;
 
 
     @Override
@@ -52,7 +75,14 @@ private RequestCheckBookRepository requestCheckBookRepository;
 
         // 1. Find the next available checkbook (sequential issuance)
         CheckBook availableCheckBook = findAndReserveNextAvailableCheckBook(request);
-        System.out.println("1");
+        return issueClaimedCheckBook(availableCheckBook, request);
+    }
+
+    /**
+     * Records the issue of an item already claimed by this transaction: the RequestCheckBook row,
+     * the item's issue fields and the parent counter.
+     */
+    private ResponseDTO<RequestCheckBookDTO> issueClaimedCheckBook(CheckBook availableCheckBook, RequestCheckBookDTO request) {
         // 2. Create request record
         RequestCheckBook requestCheckBook = new RequestCheckBook();
         requestCheckBook.setCheckBookId(availableCheckBook.getId());
@@ -75,7 +105,6 @@ private RequestCheckBookRepository requestCheckBookRepository;
         requestCheckBook.setAccountNumber(request.getAccountNumber());
 
         RequestCheckBook savedRequest = requestCheckBookRepository.save(requestCheckBook);
-        System.out.println(2);
         // 3. Update checkbook status
         availableCheckBook.setIssuedBy(request.getIssuedBy());
         availableCheckBook.setIssuedById(request.getIssuedById());
@@ -85,8 +114,7 @@ private RequestCheckBookRepository requestCheckBookRepository;
         availableCheckBook.setLastUpdatedById(request.getLastUpdatedById());
         availableCheckBook.setModifiedTimestamp(LocalDateTime.now());
         checkBookRepository.save(availableCheckBook);
-
-        System.out.println(4);
+        bookParentUsage.increment(availableCheckBook.getBookParent());
 
         log.info("CheckBook issued - Request ID: {}, CheckBook ID: {}, Serial: {} to {}",
                 savedRequest.getId(), availableCheckBook.getId(),
@@ -95,6 +123,112 @@ private RequestCheckBookRepository requestCheckBookRepository;
         return createIssueResponse(savedRequest, availableCheckBook);
     }
 
+    /**
+     * First step of a two-phase issue: holds the branch's next CheckBook for the teller until
+     * confirmCheckBookReservation or until the hold expires. Held CheckBooks are skipped by every
+     * other issue, and expired holds are released by IssuanceHoldSweeper.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<CheckBookDTO> reserveAvailableCheckBook(RequestCheckBookDTO request) {
+        if (request.getIssuedById() == null || request.getIssuedById().isBlank()) {
+            throw new BusinessRuleException("issuedById is required to reserve a CheckBook");
+        }
+        CheckBook availableCheckBook = findAndReserveNextAvailableCheckBook(request);
+
+        availableCheckBook.setHeldUntil(LocalDateTime.now().plusSeconds(holdTtlSeconds));
+        availableCheckBook.setHeldById(request.getIssuedById());
+        CheckBook held = checkBookRepository.save(availableCheckBook);
+        log.info("CheckBook {} reserved for {} until {}", held.getId(), held.getHeldById(), held.getHeldUntil());
+
+        ResponseDTO<CheckBookDTO> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(convertToDTO(held));
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("CheckBook reserved for %d seconds", holdTtlSeconds));
+        return responseDTO;
+    }
+
+    /**
+     * Second step of a two-phase issue: issues a CheckBook the same teller reserved, as long as
+     * the hold has not expired
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<RequestCheckBookDTO> confirmCheckBookReservation(Long id, RequestCheckBookDTO request) {
+        if (checkBookRepository.confirmHold(id, request.getIssuedById(), LocalDateTime.now()) == 0) {
+            throw new BusinessRuleException(
+                    String.format("CheckBook %d is not reserved by %s or the reservation has expired",
+                            id, request.getIssuedById()));
+        }
+        CheckBook availableCheckBook = checkBookRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("CheckBook", "id", id));
+        return issueClaimedCheckBook(availableCheckBook, request);
+    }
+
+    /**
+     * Issues quantity consecutive checkbooks of one batch to one customer: the rows are claimed
+     * with a single SKIP LOCKED query, the RequestCheckBook rows are inserted as one batch and
+     * the parent counter is updated once.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<List<RequestCheckBookDTO>> issueAvailableCheckBooks(RequestCheckBookDTO request, int quantity) {
+        if (quantity < 1) {
+            throw new BusinessRuleException("Quantity must be at least 1");
+        }
+        log.info("Issuing {} CheckBooks for branch: {}, issued by: {}",
+                quantity, request.getBranchId(), request.getCreatedBy());
+
+        List<CheckBook> checkBooks = claimCheckBooks(request, quantity);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<RequestCheckBook> requestCheckBooks = new ArrayList<>(checkBooks.size());
+        for (CheckBook checkBook : checkBooks) {
+            RequestCheckBook requestCheckBook = new RequestCheckBook();
+            requestCheckBook.setCheckBookId(checkBook.getId());
+            requestCheckBook.setStartSerialNumber(checkBook.getStartSerialNumber());
+            requestCheckBook.setEndSerialNumber(checkBook.getEndSerialNumber());
+            requestCheckBook.setBranchId(request.getBranchId());
+            requestCheckBook.setProcessId(request.getProcessId());
+            requestCheckBook.setSubProcessId(request.getSubProcessId());
+            requestCheckBook.setAccountNumber(request.getAccountNumber());
+            requestCheckBook.setCreatedBy(request.getCreatedBy());
+            requestCheckBook.setCreatedById(request.getCreatedById());
+            requestCheckBook.setLastUpdatedBy(request.getLastUpdatedBy());
+            requestCheckBook.setLastUpdatedById(request.getLastUpdatedById());
+            requestCheckBook.setIssuedBy(request.getIssuedBy());
+            requestCheckBook.setIssuedById(request.getIssuedById());
+            requestCheckBook.setCreatedTimestamp(now);
+            requestCheckBook.setModifiedTimestamp(now);
+            requestCheckBook.setIssuedDate(now);
+            requestCheckBooks.add(requestCheckBook);
+
+            checkBook.setIssuedBy(request.getIssuedBy());
+            checkBook.setIssuedById(request.getIssuedById());
+            checkBook.setIssuedDate(now);
+            checkBook.setLastUpdatedBy(request.getLastUpdatedBy());
+            checkBook.setLastUpdatedById(request.getLastUpdatedById());
+            checkBook.setModifiedTimestamp(now);
+        }
+        // Sequence ids, so Hibernate sends these as JDBC batches
+        List<RequestCheckBook> saved = requestCheckBookRepository.saveAll(requestCheckBooks);
+        checkBookRepository.saveAll(checkBooks);
+        bookParentUsage.increment(checkBooks.get(0).getBookParent(), checkBooks.size());
+
+        List<RequestCheckBookDTO> issued = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            issued.add(createIssueResponse(saved.get(i), checkBooks.get(i)).getResult());
+        }
+        log.info("{} CheckBooks issued: {} to {}", issued.size(),
+                checkBooks.get(0).getStartSerialNumber(), checkBooks.get(checkBooks.size() - 1).getEndSerialNumber());
+
+        ResponseDTO<List<RequestCheckBookDTO>> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(issued);
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("%d CheckBooks issued, awaiting CSO receipt", issued.size()));
+        return responseDTO;
+    }
+
     @Override
     @Transactional
     public ResponseDTO<RequestCheckBookDTO> receiveCheckBook(RequestCheckBookDTO request) {
@@ -135,55 +269,67 @@ private RequestCheckBookRepository requestCheckBookRepository;
         return createIssueResponse(updatedRequest, checkBook);
     }
 
+    /**
+     * Claims the next unissued checkbook with SELECT ... FOR UPDATE SKIP LOCKED. The row stays
+     * locked until the issuing transaction commits, so no other teller can be handed the same
+     * checkbook, and other tellers move on to the next row instead of queueing behind the lock.
+     */
     private CheckBook findAndReserveNextAvailableCheckBook(RequestCheckBookDTO request) {
-        // Find parent batches with available checkbooks using your query
-
-            // Fallback: check any available parents
-          Optional<BookParent>  availableParent = bookParentRepository.findFirstByBranchIdAndCheckLeaveTypeAndParentBookTypeAndFinishedFalseOrderByIdAsc(
-                    request.getBranchId(),CheckBookLeaveType.fromLeaves(request.getCheckBookLeaveType()) , ParentBookType.CHECK_BOOK);
-
-if(availableParent.isPresent()) {
-
-    // Find the first available checkbook in this parent (sequential)
-    List<CheckBook> checkBooks = checkBookRepository
-            .findByBookParentIdOrderByStartSerialNumberAsc(availableParent.get().getId());
-    checkBooks.sort(Comparator.comparingInt(this::extractStartSerialNumber));
-    for (CheckBook checkBook : checkBooks) {
-        // Check if not issued and matches type
-        if (checkBook.getIssuedDate() == null &&
-                checkBook.getCheckBookType() == request.getCheckBookType()) {
-
-            // Check sequential issuance rule
-            if (isSequentiallyIssuable(checkBook, checkBooks)) {
-                return checkBook;
+        if (request.getCheckBookType() != null) {
+            List<BookParent> parents = bookParentRepository
+                    .findByBranchIdAndCheckLeaveTypeAndParentBookTypeAndFinishedFalseOrderByIdAsc(
+                            request.getBranchId(), CheckBookLeaveType.fromLeaves(request.getCheckBookLeaveType()),
+                            ParentBookType.CHECK_BOOK);
+
+            for (BookParent parent : parents) {
+                Optional<CheckBook> claimed = checkBookRepository.claimNextAvailable(
+                        parent.getId(), request.getCheckBookType().name());
+                if (claimed.isPresent()) {
+                    return claimed.get();
+                }
+                // Nothing claimable: either all issued, or the rest are locked by other tellers
+                if (bookParentRepository.markFinishedIfNoCheckBookLeft(parent.getId()) > 0) {
+                    log.info("CheckBook batch {} has no unissued checkbooks left, marked finished", parent.getId());
+                }
             }
-
         }
-    }
-}
         throw new BusinessRuleException(
                 String.format("No available CheckBooks found for branch %s, type %s, %d leaves",
                         request.getBranchId(), request.getCheckBookType(),
                         request.getCheckBookLeaveType()));
     }
-    private int extractStartSerialNumber(CheckBook checkBook) {
-        // Examples: check1, check2, check3
-        String serial = checkBook.getStartSerialNumber();
-        return Integer.parseInt(serial.replaceAll("\\D+", ""));
-    }
 
-
-    private boolean isSequentiallyIssuable(CheckBook checkBook, List<CheckBook> allCheckBooks) {
-        int currentIndex = allCheckBooks.indexOf(checkBook);
-
-        // First checkbook in sequence is always issuable
-        if (currentIndex == 0) {
-            return true;
+    /**
+     * Claims quantity checkbooks from the first batch that can supply them all, all or nothing.
+     * Rows locked by other tellers are skipped, as in findAndReserveNextAvailableCheckBook.
+     */
+    private List<CheckBook> claimCheckBooks(RequestCheckBookDTO request, int quantity) {
+        if (request.getCheckBookType() != null) {
+            List<BookParent> parents = bookParentRepository
+                    .findByBranchIdAndCheckLeaveTypeAndParentBookTypeAndFinishedFalseOrderByIdAsc(
+                            request.getBranchId(), CheckBookLeaveType.fromLeaves(request.getCheckBookLeaveType()),
+                            ParentBookType.CHECK_BOOK);
+
+            for (BookParent parent : parents) {
+                List<CheckBook> claimed = checkBookRepository.claimAvailable(
+                        parent.getId(), request.getCheckBookType().name(), quantity);
+                if (claimed.size() == quantity) {
+                    return claimed;
+                }
+                if (!claimed.isEmpty()) {
+                    throw new BusinessRuleException(
+                            String.format("Only %d CheckBooks available in the active batch for branch %s, %d requested",
+                                    claimed.size(), request.getBranchId(), quantity));
+                }
+                if (bookParentRepository.markFinishedIfNoCheckBookLeft(parent.getId()) > 0) {
+                    log.info("CheckBook batch {} has no unissued checkbooks left, marked finished", parent.getId());
+                }
+            }
         }
-
-        // Check if previous checkbook is issued
-        CheckBook previousCheckBook = allCheckBooks.get(currentIndex - 1);
-        return previousCheckBook.getIssuedDate() != null;
+        throw new BusinessRuleException(
+                String.format("No available CheckBooks found for branch %s, type %s, %d leaves",
+                        request.getBranchId(), request.getCheckBookType(),
+                        request.getCheckBookLeaveType()));
     }
 
     private ResponseDTO<RequestCheckBookDTO> createIssueResponse(RequestCheckBook request, CheckBook checkBook) {
@@ -212,46 +358,18 @@ if(availableParent.isPresent()) {
     @Override
     public Optional<CheckBookDTO> findNextAvailableCheckBook(String branchId, CheckBookType type,
                                                              CheckBookLeaveType leaveType) {
-//        // Similar logic to findAndReserve but without reserving
-//        List<BookParent> availableParents = bookParentRepository.findByBranchIdAndLeavesPerCheckBookAndAvailablePads(
-//                branchId, leaveType.getNumberOfLeaves());
-//
-//        for (BookParent parent : availableParents) {
-//            List<CheckBook> checkBooks = checkBookRepository.findByBookParentIdOrderByStartSerialNumberAsc(parent.getId());
-//
-//            for (CheckBook checkBook : checkBooks) {
-//                if (checkBook.getIssuedDate() == null && checkBook.getCheckBookType() == type) {
-//                    if (isSequentiallyIssuable(checkBook, checkBooks)) {
-//                        return Optional.of(convertToDTO(checkBook));
-//                    }
-//                }
-//            }
-//        }
-
-        return Optional.empty();
+        // Same candidates as findAvailableCheckBooks, without reserving anything
+        return findSequentiallyIssuable(branchId, type, leaveType).stream()
+                .findFirst()
+                .map(this::convertToDTO);
     }
 
     @Override
     public List<CheckBookDTO> findAvailableCheckBooks(String branchId, CheckBookType type,
                                                       CheckBookLeaveType leaveType) {
-//        List<BookParent> availableParents = bookParentRepository.findByBranchIdAndLeavesPerCheckBookAndAvailablePads(
-//                branchId, leaveType.getNumberOfLeaves());
-//
-//        List<CheckBookDTO> availableCheckBooks = new ArrayList<>();
-//
-//        for (BookParent parent : availableParents) {
-//            List<CheckBook> checkBooks = checkBookRepository.findByBookParentIdAndCheckBookTypeAndIssuedDateIsNull(
-//                    parent.getId(), type);
-//
-//            for (CheckBook checkBook : checkBooks) {
-//                if (isSequentiallyIssuable(checkBook, checkBooks)) {
-//                    availableCheckBooks.add(convertToDTO(checkBook));
-//                }
-//            }
-//        }
-//
-//        return availableCheckBooks;
-        return null;
+        return findSequentiallyIssuable(branchId, type, leaveType).stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -313,6 +431,23 @@ if(availableParent.isPresent()) {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Same rows as findAll, but read through a cursor and written to out as they arrive.
+     * Each entity is detached once mapped, so memory stays flat however many rows there are.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(OutputStream out) throws IOException {
+        try (Stream<CheckBook> checkBooks = checkBookRepository.streamAll()) {
+            long written = jsonArrayStreamWriter.write(out, checkBooks, checkBook -> {
+                CheckBookDTO dto = convertToDTO(checkBook);
+                entityManager.detach(checkBook);
+                return dto;
+            });
+            log.debug("Streamed {} CheckBooks", written);
+        }
+    }
+
     @Override
     public Page<CheckBookDTO> findAll(Pageable pageable) {
         log.debug("Fetching CheckBooks with pagination");
@@ -320,6 +455,43 @@ if(availableParent.isPresent()) {
                 .map(this::convertToDTO);
     }
 
+    @Override
+    public KeysetPageDTO<CheckBookDTO> scroll(String cursor, Integer size) {
+        int pageSize = KeysetCursor.pageSize(size);
+        List<CheckBook> rows = checkBookRepository.findByIdGreaterThanOrderByIdAsc(
+                KeysetCursor.decode(cursor, 0L), KeysetCursor.limit(pageSize));
+        return KeysetCursor.page(rows, pageSize, CheckBook::getId, this::convertToDTO);
+    }
+
+    @Override
+    public KeysetPageDTO<CheckBookDTO> scrollByBranch(String branchId, String status, String cursor, Integer size) {
+        log.debug("Scrolling CheckBooks for branch: {} with status: {}", branchId, status);
+        int pageSize = KeysetCursor.pageSize(size);
+        long after = KeysetCursor.decode(cursor, 0L);
+        Pageable limit = KeysetCursor.limit(pageSize);
+
+        List<CheckBook> rows = switch (status == null ? "" : status.toLowerCase()) {
+            case "available" -> checkBookRepository
+                    .findByBranchIdAndIssuedDateIsNullAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+            case "issued" -> checkBookRepository
+                    .findByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNullAndIdGreaterThanOrderByIdAsc(
+                            branchId, after, limit);
+            case "returned" -> checkBookRepository
+                    .findByBranchIdAndReturnedDateIsNotNullAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+            default -> checkBookRepository.findByBranchIdAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+        };
+        return KeysetCursor.page(rows, pageSize, CheckBook::getId, this::convertToDTO);
+    }
+
+    // Ordered by the numeric serial, which is unique within a batch
+    @Override
+    public KeysetPageDTO<CheckBookDTO> scrollByParent(Long parentId, String cursor, Integer size) {
+        int pageSize = KeysetCursor.pageSize(size);
+        List<CheckBook> rows = checkBookRepository.findByBookParentIdAndSerialValueGreaterThanOrderBySerialValueAsc(
+                parentId, KeysetCursor.decode(cursor, -1L), KeysetCursor.limit(pageSize));
+        return KeysetCursor.page(rows, pageSize, CheckBook::getSerialValue, this::convertToDTO);
+    }
+
     @Override
     @Transactional
     public CheckBookDTO update(Long id, CheckBookUpdateDTO updateDTO) {
@@ -419,9 +591,9 @@ if(availableParent.isPresent()) {
         }
 
         // Check sequential issuance rule if part of a parent batch
-//        if (checkBook.getBookParent() != null) {
-//            validateSequentialIssuance(checkBook);
-//        }
+        if (checkBook.getBookParent() != null) {
+            sequentialIssuancePolicy.requirePreviousIssued(checkBook.getBookParent(), checkBook.getStartSerialNumber());
+        }
 
         checkBook.setIssuedDate(LocalDateTime.now());
         checkBook.setIssuedBy(issuedBy);
@@ -432,7 +604,7 @@ if(availableParent.isPresent()) {
         // Update parent's used count
         if (issued.getBookParent() != null) {
             BookParent parent = issued.getBookParent();
-            parent.setUsed(parent.getUsed() + 1);
+            bookParentUsage.increment(parent);
             parent.setLastUpdatedBy(issuedBy);
             bookParentRepository.save(parent);
         }
@@ -466,8 +638,7 @@ if(availableParent.isPresent()) {
         // Update parent's used count
         if (returned.getBookParent() != null) {
             BookParent parent = returned.getBookParent();
-            parent.setUsed(parent.getUsed() - 1);
-            if (parent.getUsed() < 0) parent.setUsed(0);
+            bookParentUsage.decrement(parent);
             parent.setLastUpdatedBy(returnedBy);
             bookParentRepository.save(parent);
         }
@@ -523,17 +694,66 @@ if(availableParent.isPresent()) {
         System.out.println("here2");
      CheckBook saved=   checkBookRepository.save(checkBook);
         System.out.println("here3");
-        BookParent bookParent =saved.getBookParent();
-
-        bookParent.setUsed(bookParent.getUsed() + 1);
-        bookParent.setLastIssuedChild(checkBook.getId());
-        bookParentRepository.save(bookParent);
+        // used was already counted when the checkbook was issued
        RequestCheckBook savedRequestCheckBook = requestCheckBookRepository.save(requestCheckBook);
         log.info("CheckBook received: {}", received.getId());
 
         return convertToRequestCheckBookDTO(savedRequestCheckBook);
     }
 
+    /**
+     * Receives a whole tray of issued CheckBooks at once: one query validates every request id,
+     * then two UPDATE statements mark the request rows and their items as received.
+     * Nothing is changed unless every id can be received.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<List<Long>> receiveCheckBooks(BulkReceiveDTO receive) {
+        Set<Long> requestIds = new LinkedHashSet<>(receive.getRequestIds());
+        if (requestIds.size() > MAX_BULK_RECEIVE) {
+            throw new BusinessRuleException(
+                    String.format("At most %d CheckBooks can be received at once", MAX_BULK_RECEIVE));
+        }
+        log.info("Receiving {} CheckBooks by user: {}", requestIds.size(), receive.getReceivedBy());
+
+        Set<Long> rejected = new LinkedHashSet<>(requestIds);
+        rejected.removeAll(requestCheckBookRepository.findReceivableIds(requestIds));
+        if (!rejected.isEmpty()) {
+            throw new BusinessRuleException(
+                    "CheckBook requests not found, not issued or already received: " + rejected);
+        }
+
+        List<Long> issuedByOthers = requestCheckBookRepository.findIssuedByOtherThan(requestIds, receive.getReceivedById());
+        if (!issuedByOthers.isEmpty()) {
+            throw new BusinessRuleException(
+                    "You can not receive CheckBooks issued by another CSO, request ids: " + issuedByOthers);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int received = requestCheckBookRepository.markReceived(
+                requestIds, receive.getReceivedBy(), receive.getReceivedById(), now);
+        if (received != requestIds.size()) {
+            // Another receive got some of them after validation; roll everything back
+            throw new BusinessRuleException("Some CheckBooks were received concurrently, please retry");
+        }
+        // Set on managed entities rather than in a bulk UPDATE, so Envers writes a MOD revision
+        // for each item; the updates are flushed in JDBC batches at commit
+        for (CheckBook checkBook : checkBookRepository.findByRequestIds(requestIds)) {
+            checkBook.setReceivedDate(now);
+            checkBook.setReceivedBy(receive.getReceivedBy());
+            checkBook.setReceivedById(receive.getReceivedById());
+            checkBook.setLastUpdatedBy(receive.getReceivedBy());
+        }
+
+        log.info("{} CheckBooks received by {}", received, receive.getReceivedBy());
+
+        ResponseDTO<List<Long>> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(new ArrayList<>(requestIds));
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("%d CheckBooks received", received));
+        return responseDTO;
+    }
+
     @Override
     public List<CheckBookDTO> findAvailableByBranch(String branchId) {
         log.debug("Finding available CheckBooks for branch: {}", branchId);
@@ -651,48 +871,42 @@ if(availableParent.isPresent()) {
     // ============== HELPER METHODS ==============
 
     private void validateSerialInRange(String serialNumber, BookParent bookParent) {
-        try {
-            String prefix = bookParent.getStartingSerial().replaceAll("\\d+", "");
-            String serialNumStr = serialNumber.substring(prefix.length());
-            String startNumStr = bookParent.getStartingSerial().substring(prefix.length());
-            String endNumStr = bookParent.getEndingSerial().substring(prefix.length());
-
-            int serialNum = Integer.parseInt(serialNumStr);
-            int startNum = Integer.parseInt(startNumStr);
-            int endNum = Integer.parseInt(endNumStr);
-
-            if (serialNum < startNum || serialNum > endNum) {
-                throw new BusinessRuleException(
-                        String.format("Serial number %s is not in range %s to %s",
-                                serialNumber, bookParent.getStartingSerial(), bookParent.getEndingSerial()));
-            }
-        } catch (NumberFormatException e) {
+        SerialRange range = SerialRange.tryParse(bookParent.getStartingSerial(), bookParent.getEndingSerial());
+        if (range == null || !range.matchesFormat(serialNumber)) {
             throw new BusinessRuleException("Invalid serial number format: " + serialNumber);
         }
+        if (!range.contains(serialNumber)) {
+            throw new BusinessRuleException(
+                    String.format("Serial number %s is not in range %s to %s",
+                            serialNumber, bookParent.getStartingSerial(), bookParent.getEndingSerial()));
+        }
     }
 
-//    private void validateSequentialIssuance(CheckBook checkBook) {
-//        BookParent parent = checkBook.getBookParent();
-//        List<CheckBook> allBooks = checkBookRepository.findByBookParentOrderBySerialNumberAsc(parent);
-//
-//        int currentIndex = -1;
-//        for (int i = 0; i < allBooks.size(); i++) {
-//            if (allBooks.get(i).getSerialNumber().equals(checkBook.getSerialNumber())) {
-//                currentIndex = i;
-//                break;
-//            }
-//        }
-//
-//        if (currentIndex > 0) {
-//            CheckBook previousBook = allBooks.get(currentIndex - 1);
-//            if (previousBook.getIssuedDate() == null) {
-//                throw new BusinessRuleException(
-//                        String.format("Cannot issue serial %s. Previous serial %s must be issued first.",
-//                                checkBook.getSerialNumber(), previousBook.getSerialNumber())
-//                );
-//            }
-//        }
-//    }
+    /**
+     * Unissued, unheld checkbooks of the type whose previous checkbook in the batch is issued.
+     * Only the first checkbook of each gap qualifies, so just those rows are loaded.
+     */
+    private List<CheckBook> findSequentiallyIssuable(String branchId, CheckBookType type,
+                                                     CheckBookLeaveType leaveType) {
+        List<BookParent> parents = bookParentRepository
+                .findByBranchIdAndCheckLeaveTypeAndParentBookTypeAndFinishedFalseOrderByIdAsc(
+                        branchId, leaveType, ParentBookType.CHECK_BOOK);
+
+        List<CheckBook> available = new ArrayList<>();
+        for (BookParent parent : parents) {
+            List<Long> values = sequentialIssuancePolicy.issuableSerials(parent).stream()
+                    .map(SerialRange::valueOf)
+                    .collect(Collectors.toList());
+            if (values.isEmpty()) {
+                continue;
+            }
+            checkBookRepository.findByBookParentIdAndSerialValueIn(parent.getId(), values).stream()
+                    .filter(checkBook -> checkBook.getCheckBookType() == type && checkBook.getHeldUntil() == null)
+                    .sorted(Comparator.comparing(CheckBook::getSerialValue))
+                    .forEach(available::add);
+        }
+        return available;
+    }
 
     private CheckBookDTO convertToDTO(CheckBook checkBook) {
         CheckBookDTO dto = modelMapper.map(checkBook, CheckBookDTO.class);
@@ -711,4 +925,4 @@ if(availableParent.isPresent()) {
 
         return dto;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,71 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.enums.StorageMode;
+import cbo.risk.sms.models.BookParent;
+import cbo.risk.sms.repositories.BookParentRepository;
+import cbo.risk.sms.utils.SerialRange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * Unissued stock of COMPRESSED CPO and PassBook batches. Those batches only get a child row
+ * when a serial is issued, so lookups by serial, branch listings and counts of available
+ * items read the remaining serials from the parent's issued-position bitmap instead.
+ */
+@Component
+public class CompressedBatchInventory {
+
+    @Autowired
+    private BookParentRepository bookParentRepository;
+
+    @Autowired
+    private SerialRangeIndex serialRangeIndex;
+
+    /**
+     * The compressed batch of the given type holding the serial, if that serial has not been
+     * issued yet and so has no child row
+     */
+    public Optional<BookParent> findUnissuedParent(String serialNumber, ParentBookType type) {
+        Optional<BookParent> parent = serialRangeIndex.isLoaded()
+                ? serialRangeIndex.findParentId(serialNumber).flatMap(bookParentRepository::findById)
+                : bookParentRepository.findBySerialInRange(serialNumber);
+        return parent
+                .filter(candidate -> candidate.isCompressed() && candidate.getParentBookType() == type)
+                .filter(candidate -> {
+                    long offset = serials(candidate).offsetOf(serialNumber);
+                    return offset >= 0 && !candidate.isIssued(Math.toIntExact(offset));
+                });
+    }
+
+    /**
+     * The branch's compressed batches of the given type that still have unissued serials
+     */
+    public List<BookParent> findParentsWithUnissued(String branchId, ParentBookType type) {
+        return bookParentRepository.findByBranchIdAndParentBookTypeAndStorageModeAndFinishedFalseOrderByIdAsc(
+                branchId, type, StorageMode.COMPRESSED);
+    }
+
+    public long countUnissued(String branchId, ParentBookType type) {
+        return findParentsWithUnissued(branchId, type).stream()
+                .mapToLong(parent -> parent.getNumOfPad() - BitSet.valueOf(parent.getIssuedPositions()).cardinality())
+                .sum();
+    }
+
+    /**
+     * Offsets of the batch's unissued serials, in serial order
+     */
+    public IntStream unissuedOffsets(BookParent parent) {
+        BitSet issued = BitSet.valueOf(parent.getIssuedPositions());
+        return IntStream.range(0, parent.getNumOfPad()).filter(offset -> !issued.get(offset));
+    }
+
+    public SerialRange serials(BookParent parent) {
+        return SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+    }
+}
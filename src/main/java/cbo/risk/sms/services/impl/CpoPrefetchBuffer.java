@@ -0,0 +1,246 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.models.BookParent;
+import cbo.risk.sms.repositories.BookParentRepository;
+import cbo.risk.sms.repositories.CpoRepository;
+import cbo.risk.sms.utils.SerialRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-branch ring of the next unissued CPOs of the branch's active batch, in serial order.
+ * The issue path takes its CPO from here and only has to claim it, instead of querying for
+ * the next available row. When a branch drops below the low-water mark the ring is topped
+ * up in the background.
+ *
+ * Entries are hints, not reservations: the claim is a conditional update, so an entry that
+ * was issued some other way in the meantime is skipped. Anything that changes which CPOs a
+ * branch can issue invalidates the branch's ring.
+ */
+@Component
+public class CpoPrefetchBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(CpoPrefetchBuffer.class);
+
+    @Autowired
+    private BookParentRepository bookParentRepository;
+
+    @Autowired
+    private CpoRepository cpoRepository;
+
+    @Autowired
+    @Qualifier("prefetchExecutor")
+    private ThreadPoolTaskExecutor prefetchExecutor;
+
+    @Value("${sms.issuance.prefetch.enabled:true}")
+    private boolean enabled;
+
+    // How many CPO ids each branch keeps ready
+    @Value("${sms.issuance.prefetch.size:50}")
+    private int capacity;
+
+    // Refill once a branch has fewer than this many left
+    @Value("${sms.issuance.prefetch.low-water:10}")
+    private int lowWater;
+
+    private final Map<String, Ring> rings = new ConcurrentHashMap<>();
+
+    /**
+     * Next prefetched CPO of the branch, or null when nothing is buffered yet. Starts a
+     * refill when the branch runs low.
+     */
+    public PrefetchedCpo poll(String branchId) {
+        if (!enabled || branchId == null) {
+            return null;
+        }
+        Ring ring = rings.computeIfAbsent(branchId, key -> new Ring());
+        PrefetchedCpo next;
+        boolean refill;
+        synchronized (ring) {
+            next = ring.entries.pollFirst();
+            refill = ring.entries.size() < lowWater && !ring.refilling;
+            if (refill) {
+                ring.refilling = true;
+            }
+        }
+        if (refill) {
+            scheduleRefill(branchId, ring);
+        }
+        return next;
+    }
+
+    /**
+     * Drops the branch's buffered CPOs once the current transaction commits (right away
+     * when there is none), e.g. after a registration, delete or return.
+     */
+    public void invalidate(String branchId) {
+        if (branchId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    clear(branchId);
+                }
+            });
+        } else {
+            clear(branchId);
+        }
+    }
+
+    /**
+     * Drops the branch's buffered CPOs if the current transaction rolls back. An issue that
+     * polled an entry and then failed would otherwise leave that CPO out of the ring for good,
+     * while later issues move the cursor past it.
+     */
+    public void invalidateOnRollback(String branchId) {
+        if (branchId == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    clear(branchId);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drops the branch's buffered CPOs right away, e.g. when a polled entry is no longer the
+     * next issuable CPO of its batch
+     */
+    public void clear(String branchId) {
+        Ring ring = rings.get(branchId);
+        if (ring != null) {
+            synchronized (ring) {
+                ring.entries.clear();
+                // A refill that is running now read the old state; its result is discarded
+                ring.generation++;
+            }
+        }
+    }
+
+    // ============== HELPER METHODS ==============
+
+    private void scheduleRefill(String branchId, Ring ring) {
+        try {
+            prefetchExecutor.execute(() -> refill(branchId, ring));
+        } catch (TaskRejectedException e) {
+            synchronized (ring) {
+                ring.refilling = false;
+            }
+        }
+    }
+
+    private void refill(String branchId, Ring ring) {
+        try {
+            long generation;
+            PrefetchedCpo last;
+            int wanted;
+            synchronized (ring) {
+                generation = ring.generation;
+                last = ring.entries.peekLast();
+                wanted = capacity - ring.entries.size();
+            }
+            if (wanted <= 0) {
+                return;
+            }
+
+            Optional<BookParent> active = bookParentRepository
+                    .findFirstByBranchIdAndParentBookTypeAndFinishedFalseOrderByIdAsc(branchId, ParentBookType.CPO);
+            // Compressed batches have no CPO rows to prefetch; they are materialized at issue time
+            if (active.isEmpty() || active.get().isCompressed()) {
+                return;
+            }
+            BookParent parent = active.get();
+            SerialRange serials = SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+
+            // Continue after the last buffered CPO, or from the parent's issue cursor
+            long after = last != null && last.getParentId().equals(parent.getId())
+                    ? last.getSerialValue()
+                    : serials.getStart() + parent.issueCursor() - 1;
+            List<Object[]> rows = cpoRepository.findUnissuedAfter(parent.getId(), after, PageRequest.of(0, wanted));
+
+            synchronized (ring) {
+                if (ring.generation != generation) {
+                    return;
+                }
+                for (Object[] row : rows) {
+                    long serialValue = (Long) row[1];
+                    PrefetchedCpo tail = ring.entries.peekLast();
+                    if (tail == null || !tail.getParentId().equals(parent.getId())
+                            || tail.getSerialValue() < serialValue) {
+                        ring.entries.addLast(new PrefetchedCpo((Long) row[0], parent.getId(),
+                                serialValue, serialValue - serials.getStart()));
+                    }
+                }
+            }
+            log.debug("Prefetched {} CPOs of parent {} for branch {}", rows.size(), parent.getId(), branchId);
+        } catch (RuntimeException e) {
+            log.warn("Could not prefetch CPOs for branch {}", branchId, e);
+        } finally {
+            synchronized (ring) {
+                ring.refilling = false;
+            }
+        }
+    }
+
+    private static class Ring {
+        private final Deque<PrefetchedCpo> entries = new ArrayDeque<>();
+        private boolean refilling;
+        private long generation;
+    }
+
+    /**
+     * A CPO the branch can issue next, with its position in the parent's serial range
+     */
+    public static class PrefetchedCpo {
+        private final Long id;
+        private final Long parentId;
+        private final long serialValue;
+        private final long offset;
+
+        private PrefetchedCpo(Long id, Long parentId, long serialValue, long offset) {
+            this.id = id;
+            this.parentId = parentId;
+            this.serialValue = serialValue;
+            this.offset = offset;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getParentId() {
+            return parentId;
+        }
+
+        public long getSerialValue() {
+            return serialValue;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -9,20 +9,31 @@ import cbo.risk.sms.repositories.BookParentRepository;
 import cbo.risk.sms.repositories.CpoRepository;
 import cbo.risk.sms.repositories.RequestCpoRepository;
 import cbo.risk.sms.services.CpoService;
+import cbo.risk.sms.utils.KeysetCursor;
+import cbo.risk.sms.utils.SerialRange;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -30,10 +41,24 @@ public class CpoServiceImpl implements CpoService {
 
     private static final Logger log = LoggerFactory.getLogger(CpoServiceImpl.class);
 
+    private static final int MAX_BULK_RECEIVE = 1000;
+
+    // How long a reserved item is held for its teller before the sweeper releases it
+    @Value("${sms.issuance.hold.ttl-seconds:300}")
+    private long holdTtlSeconds;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     private final CpoRepository cpoRepository;
     private final BookParentRepository bookParentRepository;
     private final ModelMapper modelMapper;
     private final RequestCpoRepository requestCpoRepository;
+    private final CpoPrefetchBuffer cpoPrefetchBuffer;
+    private final SequentialIssuancePolicy sequentialIssuancePolicy;
+    private final JsonArrayStreamWriter jsonArrayStreamWriter;
+    private final CompressedBatchInventory compressedBatchInventory;
+    private final BookParentUsage bookParentUsage;
 @Override
     @Transactional
     public ResponseDTO<RequestCpoDTO> issueAvailableCpo(RequestCpoDTO request) {
@@ -45,7 +70,14 @@ public class CpoServiceImpl implements CpoService {
 
         // 1. Find next available passbook
         Cpo availableCPO = findAndReserveNextAvailableCpo(request);
-        System.out.println(1);
+        return issueClaimedCpo(availableCPO, request);
+    }
+
+    /**
+     * Records the issue of an item already claimed by this transaction: the RequestCpo row,
+     * the item's issue fields and the parent counter.
+     */
+    private ResponseDTO<RequestCpoDTO> issueClaimedCpo(Cpo availableCPO, RequestCpoDTO request) {
         // 2. Create request record
         RequestCpo requestCpo = new RequestCpo();
         requestCpo.setCpoId(availableCPO.getId());
@@ -63,10 +95,8 @@ public class CpoServiceImpl implements CpoService {
         requestCpo.setIssuedDate(LocalDateTime.now());
         requestCpo.setModifiedTimestamp(LocalDateTime.now());
         requestCpo.setSubProcessId(request.getSubProcessId());
-        System.out.println(2);
         RequestCpo savedRequest =
                 requestCpoRepository.save(requestCpo);
-        System.out.println(3);
         // 3. Update passbook status
         availableCPO.setIssuedById(request.getIssuedById());
         availableCPO.setIssuedBy(request.getIssuedBy());
@@ -79,9 +109,8 @@ public class CpoServiceImpl implements CpoService {
         availableCPO.setCreatedTimestamp(LocalDateTime.now());
         availableCPO.setIssuedDate(LocalDateTime.now());
         availableCPO.setModifiedTimestamp(LocalDateTime.now());
-        System.out.println(4);
         cpoRepository.save(availableCPO);
-        System.out.println(5);
+        bookParentUsage.increment(availableCPO.getBookParent());
 
 
         log.info("PassBook issued - Request ID: {}, PassBook ID: {}, Serial: {}",
@@ -91,6 +120,157 @@ public class CpoServiceImpl implements CpoService {
 
         return createIssueResponse(savedRequest, availableCPO);
     }
+
+    /**
+     * First step of a two-phase issue: holds the branch's next CPO for the teller until
+     * confirmCpoReservation or until the hold expires. Held CPOs are skipped by every
+     * other issue, and expired holds are released by IssuanceHoldSweeper.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<CpoDTO> reserveAvailableCpo(RequestCpoDTO request) {
+        if (request.getIssuedById() == null || request.getIssuedById().isBlank()) {
+            throw new BusinessRuleException("issuedById is required to reserve a CPO");
+        }
+        BookParent parent = bookParentRepository.findFirstByBranchIdAndParentBookTypeAndFinishedFalseOrderByIdAsc(
+                        request.getBranchId(), ParentBookType.CPO)
+                .orElseThrow(() -> new BusinessRuleException(
+                        String.format("No available Cpos found for branch %s", request.getBranchId())));
+        if (parent.isCompressed()) {
+            // The bitmap cannot give a position back, so compressed batches issue directly
+            throw new BusinessRuleException("CPOs of compressed batches cannot be reserved, issue them directly");
+        }
+        Cpo availableCPO = claimNextCpo(parent.getId())
+                .orElseThrow(() -> new BusinessRuleException(
+                        String.format("No available Cpos found for branch %s", request.getBranchId())));
+
+        availableCPO.setHeldUntil(LocalDateTime.now().plusSeconds(holdTtlSeconds));
+        availableCPO.setHeldById(request.getIssuedById());
+        Cpo held = cpoRepository.save(availableCPO);
+        log.info("CPO {} reserved for {} until {}", held.getId(), held.getHeldById(), held.getHeldUntil());
+
+        ResponseDTO<CpoDTO> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(convertToDTO(held));
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("CPO reserved for %d seconds", holdTtlSeconds));
+        return responseDTO;
+    }
+
+    /**
+     * Second step of a two-phase issue: issues a CPO the same teller reserved, as long as
+     * the hold has not expired
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<RequestCpoDTO> confirmCpoReservation(Long id, RequestCpoDTO request) {
+        if (cpoRepository.confirmHold(id, request.getIssuedById(), LocalDateTime.now()) == 0) {
+            throw new BusinessRuleException(
+                    String.format("CPO %d is not reserved by %s or the reservation has expired",
+                            id, request.getIssuedById()));
+        }
+        Cpo availableCPO = cpoRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("CPO", "id", id));
+        return issueClaimedCpo(availableCPO, request);
+    }
+    /**
+     * Issues the next quantity CPOs of the branch's active batch to one customer: one parent
+     * lock, one batched insert of the RequestCpo rows and one update of the parent counter.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<List<RequestCpoDTO>> issueAvailableCpos(RequestCpoDTO request, int quantity) {
+        if (quantity < 1) {
+            throw new BusinessRuleException("Quantity must be at least 1");
+        }
+        log.info("Issuing {} CPOs for branch: {}, account: {}, issued by: {}",
+                quantity, request.getBranchId(), request.getAccountNumber(), request.getCreatedBy());
+
+        BookParent parent = bookParentRepository.findFirstByBranchIdAndParentBookTypeAndFinishedFalseOrderByIdAsc(
+                        request.getBranchId(), ParentBookType.CPO)
+                .flatMap(active -> bookParentRepository.findByIdForUpdate(active.getId()))
+                .orElseThrow(() -> new BusinessRuleException(
+                        String.format("No available Cpos found for branch %s", request.getBranchId())));
+        List<Cpo> cpos = claimCpos(parent, request, quantity);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<RequestCpo> requestCpos = new ArrayList<>(cpos.size());
+        for (Cpo cpo : cpos) {
+            RequestCpo requestCpo = new RequestCpo();
+            requestCpo.setCpoId(cpo.getId());
+            requestCpo.setSerialNumber(cpo.getSerialNumber());
+            requestCpo.setBranchId(request.getBranchId());
+            requestCpo.setAccountNumber(request.getAccountNumber());
+            requestCpo.setProcessId(request.getProcessId());
+            requestCpo.setSubProcessId(request.getSubProcessId());
+            requestCpo.setIssuedById(request.getIssuedById());
+            requestCpo.setIssuedBy(request.getIssuedBy());
+            requestCpo.setLastUpdatedById(request.getLastUpdatedById());
+            requestCpo.setLastUpdatedBy(request.getLastUpdatedBy());
+            requestCpo.setCreatedBy(request.getCreatedBy());
+            requestCpo.setCreatedById(request.getCreatedById());
+            requestCpo.setCreatedTimestamp(now);
+            requestCpo.setIssuedDate(now);
+            requestCpo.setModifiedTimestamp(now);
+            requestCpos.add(requestCpo);
+
+            cpo.setIssuedById(request.getIssuedById());
+            cpo.setIssuedBy(request.getIssuedBy());
+            cpo.setLastUpdatedBy(request.getLastUpdatedBy());
+            cpo.setLastUpdatedById(request.getLastUpdatedById());
+            cpo.setIssuedDate(now);
+            cpo.setModifiedTimestamp(now);
+        }
+        // Sequence ids, so Hibernate sends these as JDBC batches
+        List<RequestCpo> saved = requestCpoRepository.saveAll(requestCpos);
+        cpoRepository.saveAll(cpos);
+        bookParentUsage.increment(parent, cpos.size());
+
+        List<RequestCpoDTO> issued = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            issued.add(createIssueResponse(saved.get(i), cpos.get(i)).getResult());
+        }
+        log.info("{} CPOs issued from parent {}: {} to {}", issued.size(), parent.getId(),
+                cpos.get(0).getSerialNumber(), cpos.get(cpos.size() - 1).getSerialNumber());
+
+        ResponseDTO<List<RequestCpoDTO>> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(issued);
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("%d CPOs issued successfully", issued.size()));
+        return responseDTO;
+    }
+    /**
+     * Takes the next quantity unissued CPOs of the locked parent, all or nothing
+     */
+    private List<Cpo> claimCpos(BookParent parent, RequestCpoDTO request, int quantity) {
+        if (parent.getAvailablePads() < quantity) {
+            throw new BusinessRuleException(
+                    String.format("Only %d CPOs left in the active batch for branch %s, %d requested",
+                            parent.getAvailablePads(), request.getBranchId(), quantity));
+        }
+
+        List<Cpo> cpos = new ArrayList<>(quantity);
+        if (parent.isCompressed()) {
+            for (int i = 0; i < quantity; i++) {
+                cpos.add(materializeNextCpo(parent.getId(), request));
+            }
+            return cpos;
+        }
+
+        SerialRange serials = SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+        if (parent.issueCursor() < serials.size()) {
+            cpos.addAll(cpoRepository
+                    .findByBookParentIdAndIssuedDateIsNullAndHeldUntilIsNullAndSerialValueGreaterThanEqualOrderBySerialValueAsc(
+                            parent.getId(), serials.getStart() + parent.issueCursor(), PageRequest.of(0, quantity)));
+        }
+        if (cpos.size() < quantity) {
+            throw new BusinessRuleException(
+                    String.format("Only %d CPOs left in the active batch for branch %s, %d requested",
+                            cpos.size(), request.getBranchId(), quantity));
+        }
+        Cpo last = cpos.get(cpos.size() - 1);
+        parent.advanceIssueCursor(serials.offsetOf(last.getSerialNumber()), last.getId());
+        return cpos;
+    }
     private ResponseDTO<RequestCpoDTO> createIssueResponse(
             RequestCpo requestCpo,
             Cpo cpo) {
@@ -116,28 +296,22 @@ public class CpoServiceImpl implements CpoService {
         return responseDTO;
     }
     private Cpo findAndReserveNextAvailableCpo(RequestCpoDTO request) {
+        Cpo prefetched = claimPrefetchedCpo(request.getBranchId());
+        if (prefetched != null) {
+            return prefetched;
+        }
 
         Optional<BookParent>  availableParent = bookParentRepository.findFirstByBranchIdAndParentBookTypeAndFinishedFalseOrderByIdAsc(
                 request.getBranchId(), ParentBookType.CPO);
         if(availableParent.isPresent()) {
 
-            List<Cpo> cpos = cpoRepository
-                    .findByBranchIdOrderBySerialNumberAsc(request.getBranchId());
-
-
-
-            cpos.sort(Comparator.comparingInt(this::extractPassBookNumber));
-
-            for (Cpo cpo : cpos) {
-
-                // Available = not yet issued
-                if (cpo.getIssuedDate() == null) {
+            if (availableParent.get().isCompressed()) {
+                return materializeNextCpo(availableParent.get().getId(), request);
+            }
 
-                    // Sequential rule
-                    if (isSequentiallyIssuable(cpo, cpos)) {
-                        return cpo;
-                    }
-                }
+            Optional<Cpo> next = claimNextCpo(availableParent.get().getId());
+            if (next.isPresent()) {
+                return next.get();
             }
         }
 
@@ -145,24 +319,103 @@ public class CpoServiceImpl implements CpoService {
                 String.format("No available Cpos found for branch %s",
                         request.getBranchId()));
     }
-    private boolean isSequentiallyIssuable(Cpo cpo, List<Cpo> cpos) {
-
-        int currentIndex = cpos.indexOf(cpo);
+    /**
+     * Takes the branch's next CPO from the prefetch buffer and claims it with one conditional
+     * update, without looking it up first. The entry is only used while it is still the first
+     * issuable CPO of its locked batch; otherwise the buffer is dropped and the CPO at the
+     * cursor is claimed instead. Null when the buffer has nothing left and the query path is used.
+     */
+    private Cpo claimPrefetchedCpo(String branchId) {
+        CpoPrefetchBuffer.PrefetchedCpo next = cpoPrefetchBuffer.poll(branchId);
+        if (next == null) {
+            return null;
+        }
+        // Polled entries are gone from the ring; if this issue rolls back, the ring is rebuilt from the cursor
+        cpoPrefetchBuffer.invalidateOnRollback(branchId);
+
+        for (; next != null; next = cpoPrefetchBuffer.poll(branchId)) {
+            // Parent row first, the same lock order as claimNextCpo; the cursor only moves once the claim succeeded
+            Long parentId = next.getParentId();
+            BookParent parent = bookParentRepository.findByIdForUpdate(parentId)
+                    .orElseThrow(() -> new ResourceNotFoundException("BookParent", "id", parentId));
+            if (!isFirstIssuable(parent, next)) {
+                // An earlier CPO came back (e.g. its issue rolled back after this entry was polled);
+                // claiming past it would move the cursor over an unissued row
+                cpoPrefetchBuffer.clear(branchId);
+                return claimNextCpo(parentId).orElse(null);
+            }
+            if (cpoRepository.claimUnissued(next.getId(), LocalDateTime.now()) == 1) {
+                bookParentRepository.advanceIssueCursor(parentId, next.getOffset(), next.getId());
+                Long cpoId = next.getId();
+                return cpoRepository.findById(cpoId)
+                        .orElseThrow(() -> new ResourceNotFoundException("CPO", "id", cpoId));
+            }
+        }
+        return null;
+    }
+    // True if the entry is the first CPO at or after the locked parent's cursor that is neither issued nor held
+    private boolean isFirstIssuable(BookParent parent, CpoPrefetchBuffer.PrefetchedCpo entry) {
+        long start = entry.getSerialValue() - entry.getOffset();
+        Long first = cpoRepository.findFirstIssuableSerialValue(parent.getId(), start + parent.issueCursor());
+        return first != null && first == entry.getSerialValue();
+    }
+    /**
+     * Fetches the CPO at the parent's issue cursor and moves the cursor past it. Everything
+     * before the cursor is issued or reserved, so the sequential rule holds without loading the branch.
+     */
+    private Optional<Cpo> claimNextCpo(Long parentId) {
+        BookParent parent = bookParentRepository.findByIdForUpdate(parentId)
+                .orElseThrow(() -> new ResourceNotFoundException("BookParent", "id", parentId));
 
-        // First passbook can always be issued
-        if (currentIndex == 0) {
-            return true;
+        SerialRange serials = SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+        if (parent.issueCursor() >= serials.size()) {
+            return Optional.empty();
         }
 
-        Cpo previousCpo= cpos.get(currentIndex - 1);
+        // Normally the row at the cursor itself; skips rows issued some other way
+        Optional<Cpo> next = cpoRepository
+                .findFirstByBookParentIdAndIssuedDateIsNullAndHeldUntilIsNullAndSerialValueGreaterThanEqualOrderBySerialValueAsc(
+                        parentId, serials.getStart() + parent.issueCursor());
+        next.ifPresent(cpo -> parent.advanceIssueCursor(serials.offsetOf(cpo.getSerialNumber()), cpo.getId()));
+        return next;
+    }
+    /**
+     * Compressed batches have no CPO rows until issue time: lock the parent, take its
+     * first unissued position and create the row for that serial.
+     */
+    private Cpo materializeNextCpo(Long parentId, RequestCpoDTO request) {
+        BookParent parent = bookParentRepository.findByIdForUpdate(parentId)
+                .orElseThrow(() -> new ResourceNotFoundException("BookParent", "id", parentId));
+
+        int offset = parent.nextUnissuedOffset();
+        if (offset < 0) {
+            throw new BusinessRuleException(
+                    String.format("No available Cpos found for branch %s",
+                            request.getBranchId()));
+        }
+        parent.markIssued(offset);
 
+        SerialRange serials = SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+        Cpo cpo = newCpo(parent, serials.serialAt(offset));
 
-        return previousCpo.getIssuedDate() != null;
+        Cpo saved = cpoRepository.save(cpo);
+        parent.advanceIssueCursor(offset, saved.getId());
+        return saved;
     }
-    private int extractPassBookNumber(Cpo cpo) {
-        // Examples: pas1, pas10, pas003
-        String serial = cpo.getSerialNumber();
-        return Integer.parseInt(serial.replaceAll("\\D+", ""));
+
+    // Unsaved Cpo for a serial of a compressed batch; saved when issued, otherwise only mapped to a DTO
+    private Cpo newCpo(BookParent parent, String serialNumber) {
+        Cpo cpo = new Cpo();
+        cpo.setSerialNumber(serialNumber);
+        cpo.setBookParent(parent);
+        cpo.setBranchId(parent.getBranchId());
+        cpo.setSubProcessId(parent.getSubProcessId());
+        cpo.setProcessId(parent.getProcessId());
+        cpo.setCreatedBy(parent.getCreatedBy());
+        cpo.setCreatedById(parent.getCreatedById());
+        cpo.setLastUpdatedBy(parent.getLastUpdatedBy());
+        cpo.setLastUpdatedById(parent.getLastUpdatedById());
+        return cpo;
     }
 
     @Override
@@ -258,6 +511,7 @@ public class CpoServiceImpl implements CpoService {
                 .collect(Collectors.toList());
 
         List<Cpo> saved = cpoRepository.saveAll(cpos);
+        cpoPrefetchBuffer.invalidate(bookParent.getBranchId());
         log.info("Created {} CPOs for parent ID: {}", saved.size(), parentId);
 
         return saved.stream()
@@ -280,6 +534,23 @@ public class CpoServiceImpl implements CpoService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Same rows as findAll, but read through a cursor and written to out as they arrive.
+     * Each entity is detached once mapped, so memory stays flat however many rows there are.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(OutputStream out) throws IOException {
+        try (Stream<Cpo> cpos = cpoRepository.streamAll()) {
+            long written = jsonArrayStreamWriter.write(out, cpos, cpo -> {
+                CpoDTO dto = convertToDTO(cpo);
+                entityManager.detach(cpo);
+                return dto;
+            });
+            log.debug("Streamed {} CPOs", written);
+        }
+    }
+
     @Override
     public Page<CpoDTO> findAll(Pageable pageable) {
         log.debug("Fetching CPOs with pagination");
@@ -287,6 +558,43 @@ public class CpoServiceImpl implements CpoService {
                 .map(this::convertToDTO);
     }
 
+    @Override
+    public KeysetPageDTO<CpoDTO> scroll(String cursor, Integer size) {
+        int pageSize = KeysetCursor.pageSize(size);
+        List<Cpo> rows = cpoRepository.findByIdGreaterThanOrderByIdAsc(
+                KeysetCursor.decode(cursor, 0L), KeysetCursor.limit(pageSize));
+        return KeysetCursor.page(rows, pageSize, Cpo::getId, this::convertToDTO);
+    }
+
+    @Override
+    public KeysetPageDTO<CpoDTO> scrollByBranch(String branchId, String status, String cursor, Integer size) {
+        log.debug("Scrolling CPOs for branch: {} with status: {}", branchId, status);
+        int pageSize = KeysetCursor.pageSize(size);
+        long after = KeysetCursor.decode(cursor, 0L);
+        Pageable limit = KeysetCursor.limit(pageSize);
+
+        List<Cpo> rows = switch (status == null ? "" : status.toLowerCase()) {
+            case "available" -> cpoRepository
+                    .findByBranchIdAndIssuedDateIsNullAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+            case "issued" -> cpoRepository
+                    .findByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNullAndIdGreaterThanOrderByIdAsc(
+                            branchId, after, limit);
+            case "returned" -> cpoRepository
+                    .findByBranchIdAndReturnedDateIsNotNullAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+            default -> cpoRepository.findByBranchIdAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+        };
+        return KeysetCursor.page(rows, pageSize, Cpo::getId, this::convertToDTO);
+    }
+
+    // Ordered by the numeric serial, which is unique within a batch
+    @Override
+    public KeysetPageDTO<CpoDTO> scrollByParent(Long parentId, String cursor, Integer size) {
+        int pageSize = KeysetCursor.pageSize(size);
+        List<Cpo> rows = cpoRepository.findByBookParentIdAndSerialValueGreaterThanOrderBySerialValueAsc(
+                parentId, KeysetCursor.decode(cursor, -1L), KeysetCursor.limit(pageSize));
+        return KeysetCursor.page(rows, pageSize, Cpo::getSerialValue, this::convertToDTO);
+    }
+
     @Override
     @Transactional
     public CpoDTO update(Long id, CpoUpdateDTO updateDTO) {
@@ -348,6 +656,7 @@ public class CpoServiceImpl implements CpoService {
         // If CPO has a parent, we might want to decrement counts or handle differently
         // For now, just delete
         cpoRepository.deleteById(id);
+        cpoPrefetchBuffer.invalidate(cpo.getBranchId());
         log.info("CPO deleted: {}", id);
     }
 
@@ -355,7 +664,9 @@ public class CpoServiceImpl implements CpoService {
     public Optional<CpoDTO> findBySerialNumber(String serialNumber) {
         log.debug("Finding CPO by serial number: {}", serialNumber);
         return cpoRepository.findBySerialNumber(serialNumber)
-                .map(this::convertToDTO);
+                .map(this::convertToDTO)
+                .or(() -> compressedBatchInventory.findUnissuedParent(serialNumber, ParentBookType.CPO)
+                        .map(parent -> convertToDTO(newCpo(parent, serialNumber))));
     }
 
     @Override
@@ -389,7 +700,7 @@ public class CpoServiceImpl implements CpoService {
 
         // Check sequential issuance rule if part of a parent batch
         if (cpo.getBookParent() != null) {
-            validateSequentialIssuance(cpo);
+            sequentialIssuancePolicy.requirePreviousIssued(cpo.getBookParent(), cpo.getSerialNumber());
         }
 
         cpo.setIssuedDate(LocalDateTime.now());
@@ -401,10 +712,9 @@ public class CpoServiceImpl implements CpoService {
         // Update parent's used count
         if (issued.getBookParent() != null) {
             BookParent parent = issued.getBookParent();
-            parent.setUsed(parent.getUsed() + 1);
+            bookParentUsage.increment(parent);
             parent.setLastUpdatedBy(issuedBy);
             bookParentRepository.save(parent);
-            log.info("Parent used count updated to: {}", parent.getUsed());
         }
 
         log.info("CPO issued: {}", issued.getId());
@@ -436,14 +746,9 @@ public class CpoServiceImpl implements CpoService {
         // Update parent's used count (decrement)
         if (returned.getBookParent() != null) {
             BookParent parent = returned.getBookParent();
-            parent.setUsed(parent.getUsed() - 1);
-            if (parent.getUsed() < 0) {
-                log.warn("Parent used count became negative, resetting to 0. Parent ID: {}", parent.getId());
-                parent.setUsed(0);
-            }
+            bookParentUsage.decrement(parent);
             parent.setLastUpdatedBy(returnedBy);
             bookParentRepository.save(parent);
-            log.info("Parent used count updated to: {}", parent.getUsed());
         }
 
         log.info("CPO returned: {}", returned.getId());
@@ -478,20 +783,65 @@ public class CpoServiceImpl implements CpoService {
         requestCpo.setReceivedById(requestCpoDTO.getReceivedById());
         requestCpoRepository.save(requestCpo);
         Cpo received = cpoRepository.save(cpo);
-        BookParent parent = cpo.getBookParent();
-        parent.setUsed(parent.getUsed() + 1);
-        parent.setLastIssuedChild(cpo.getId());
-        bookParentRepository.save(parent);
+        // used was already counted when the CPO was issued
         log.info("CPO received: {}", received.getId());
 
         return convertToDTO(received);
     }
 
+    /**
+     * Receives a whole tray of issued CPOs at once: one query validates every request id,
+     * then two UPDATE statements mark the request rows and their items as received.
+     * Nothing is changed unless every id can be received.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<List<Long>> receiveCpos(BulkReceiveDTO receive) {
+        Set<Long> requestIds = new LinkedHashSet<>(receive.getRequestIds());
+        if (requestIds.size() > MAX_BULK_RECEIVE) {
+            throw new BusinessRuleException(
+                    String.format("At most %d CPOs can be received at once", MAX_BULK_RECEIVE));
+        }
+        log.info("Receiving {} CPOs by user: {}", requestIds.size(), receive.getReceivedBy());
+
+        Set<Long> rejected = new LinkedHashSet<>(requestIds);
+        rejected.removeAll(requestCpoRepository.findReceivableIds(requestIds));
+        if (!rejected.isEmpty()) {
+            throw new BusinessRuleException(
+                    "CPO requests not found, not issued or already received: " + rejected);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int received = requestCpoRepository.markReceived(
+                requestIds, receive.getReceivedBy(), receive.getReceivedById(), now);
+        if (received != requestIds.size()) {
+            // Another receive got some of them after validation; roll everything back
+            throw new BusinessRuleException("Some CPOs were received concurrently, please retry");
+        }
+        // Set on managed entities rather than in a bulk UPDATE, so Envers writes a MOD revision
+        // for each item; the updates are flushed in JDBC batches at commit
+        for (Cpo cpo : cpoRepository.findByRequestIds(requestIds)) {
+            cpo.setReceivedDate(now);
+            cpo.setReceivedBy(receive.getReceivedBy());
+            cpo.setReceivedById(receive.getReceivedById());
+            cpo.setLastUpdatedBy(receive.getReceivedBy());
+        }
+
+        log.info("{} CPOs received by {}", received, receive.getReceivedBy());
+
+        ResponseDTO<List<Long>> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(new ArrayList<>(requestIds));
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("%d CPOs received", received));
+        return responseDTO;
+    }
+
     @Override
     public List<CpoDTO> findAvailableByBranch(String branchId) {
         log.debug("Finding available CPOs for branch: {}", branchId);
-        return cpoRepository.findByBranchIdAndIssuedDateIsNull(branchId).stream()
-                .map(this::convertToDTO)
+        return Stream.concat(
+                        cpoRepository.findByBranchIdAndIssuedDateIsNull(branchId).stream().map(this::convertToDTO),
+                        unissuedCompressedCpos(branchId))
                 .collect(Collectors.toList());
     }
 
@@ -508,7 +858,8 @@ public class CpoServiceImpl implements CpoService {
         log.debug("Counting CPOs for branch: {} with status: {}", branchId, status);
         switch (status.toLowerCase()) {
             case "available":
-                return cpoRepository.countByBranchIdAndIssuedDateIsNull(branchId);
+                return cpoRepository.countByBranchIdAndIssuedDateIsNull(branchId)
+                        + compressedBatchInventory.countUnissued(branchId, ParentBookType.CPO);
             case "issued":
                 return cpoRepository.countByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNull(branchId);
             case "returned":
@@ -520,7 +871,8 @@ public class CpoServiceImpl implements CpoService {
 
     @Override
     public boolean existsBySerialNumber(String serialNumber) {
-        return cpoRepository.existsBySerialNumber(serialNumber);
+        return cpoRepository.existsBySerialNumber(serialNumber)
+                || compressedBatchInventory.findUnissuedParent(serialNumber, ParentBookType.CPO).isPresent();
     }
 
     @Override
@@ -528,9 +880,7 @@ public class CpoServiceImpl implements CpoService {
         log.debug("Finding CPOs for branch: {} with status: {}", branchId, status);
         switch (status.toLowerCase()) {
             case "available":
-                return cpoRepository.findByBranchIdAndIssuedDateIsNull(branchId).stream()
-                        .map(this::convertToDTO)
-                        .collect(Collectors.toList());
+                return findAvailableByBranch(branchId);
             case "issued":
                 return cpoRepository.findByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNull(branchId).stream()
                         .map(this::convertToDTO)
@@ -597,49 +947,27 @@ public class CpoServiceImpl implements CpoService {
     // ============== HELPER METHODS ==============
 
     private void validateSerialInRange(String serialNumber, BookParent bookParent) {
-        try {
-            String prefix = bookParent.getStartingSerial().replaceAll("\\d+", "");
-            String serialNumStr = serialNumber.substring(prefix.length());
-            String startNumStr = bookParent.getStartingSerial().substring(prefix.length());
-            String endNumStr = bookParent.getEndingSerial().substring(prefix.length());
-
-            int serialNum = Integer.parseInt(serialNumStr);
-            int startNum = Integer.parseInt(startNumStr);
-            int endNum = Integer.parseInt(endNumStr);
-
-            if (serialNum < startNum || serialNum > endNum) {
-                throw new BusinessRuleException(
-                        String.format("Serial number %s is not in range %s to %s",
-                                serialNumber, bookParent.getStartingSerial(), bookParent.getEndingSerial()));
-            }
-        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+        SerialRange range = SerialRange.tryParse(bookParent.getStartingSerial(), bookParent.getEndingSerial());
+        if (range == null || !range.matchesFormat(serialNumber)) {
             throw new BusinessRuleException(
                     String.format("Invalid serial number format: %s. Expected format matching parent range: %s-%s",
                             serialNumber, bookParent.getStartingSerial(), bookParent.getEndingSerial()));
         }
-    }
-
-    private void validateSequentialIssuance(Cpo cpo) {
-        BookParent parent = cpo.getBookParent();
-        List<Cpo> allCpos = cpoRepository.findByBookParentOrderBySerialNumberAsc(parent);
-
-        int currentIndex = -1;
-        for (int i = 0; i < allCpos.size(); i++) {
-            if (allCpos.get(i).getSerialNumber().equals(cpo.getSerialNumber())) {
-                currentIndex = i;
-                break;
-            }
+        if (!range.contains(serialNumber)) {
+            throw new BusinessRuleException(
+                    String.format("Serial number %s is not in range %s to %s",
+                            serialNumber, bookParent.getStartingSerial(), bookParent.getEndingSerial()));
         }
+    }
 
-        if (currentIndex > 0) {
-            Cpo previousCpo = allCpos.get(currentIndex - 1);
-            if (previousCpo.getIssuedDate() == null) {
-                throw new BusinessRuleException(
-                        String.format("Cannot issue serial %s. Previous serial %s must be issued first.",
-                                cpo.getSerialNumber(), previousCpo.getSerialNumber())
-                );
-            }
-        }
+    // Unissued CPOs of the branch's compressed batches, which have no rows until they are issued
+    private Stream<CpoDTO> unissuedCompressedCpos(String branchId) {
+        return compressedBatchInventory.findParentsWithUnissued(branchId, ParentBookType.CPO).stream()
+                .flatMap(parent -> {
+                    SerialRange serials = compressedBatchInventory.serials(parent);
+                    return compressedBatchInventory.unissuedOffsets(parent)
+                            .mapToObj(offset -> convertToDTO(newCpo(parent, serials.serialAt(offset))));
+                });
     }
 
     private CpoDTO convertToDTO(Cpo cpo) {
@@ -656,4 +984,4 @@ public class CpoServiceImpl implements CpoService {
 
         return dto;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,209 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.dtos.BatchRegistrationDTO;
+import cbo.risk.sms.dtos.BatchResponseDTO;
+import cbo.risk.sms.enums.IdempotencyStatus;
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import cbo.risk.sms.models.IdempotencyRecord;
+import cbo.risk.sms.repositories.IdempotencyRecordRepository;
+import cbo.risk.sms.services.IdempotencyService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyServiceImpl.class);
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    @Autowired
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // An IN_PROGRESS claim older than this is taken to be abandoned (e.g. the instance crashed)
+    // and can be reclaimed by a retry; keep it above the slowest registration
+    @Value("${sms.idempotency.lease-seconds:600}")
+    private long leaseSeconds;
+
+    @Override
+    public BatchResponseDTO execute(String idempotencyKey, String endpoint, BatchRegistrationDTO request,
+                                    Supplier<BatchResponseDTO> registration) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return registration.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new BusinessRuleException(
+                    String.format("Idempotency-Key must be at most %d characters", MAX_KEY_LENGTH));
+        }
+        String requestHash = hash(request);
+
+        Optional<IdempotencyRecord> existing = idempotencyRecordRepository.findById(idempotencyKey);
+        if (existing.isPresent() && !reclaimIfExpired(existing.get(), endpoint, requestHash)) {
+            return replay(existing.get(), endpoint, requestHash);
+        }
+
+        if (existing.isEmpty() && !claim(idempotencyKey, endpoint, requestHash)) {
+            // Another request claimed the key between our lookup and insert
+            return idempotencyRecordRepository.findById(idempotencyKey)
+                    .map(record -> replay(record, endpoint, requestHash))
+                    .orElseThrow(() -> inProgress(idempotencyKey));
+        }
+
+        try {
+            // Registration and the stored response commit together
+            return transaction(TransactionDefinition.PROPAGATION_REQUIRED).execute(status -> {
+                BatchResponseDTO response = registration.get();
+
+                IdempotencyRecord record = idempotencyRecordRepository.findById(idempotencyKey)
+                        .orElseThrow(() -> inProgress(idempotencyKey));
+                record.setStatus(IdempotencyStatus.COMPLETED);
+                record.setResponseBody(toJson(response));
+                record.setCompletedTimestamp(LocalDateTime.now());
+                idempotencyRecordRepository.save(record);
+                return response;
+            });
+        } catch (RuntimeException e) {
+            // Let the client retry the failed request with the same key
+            release(idempotencyKey);
+            throw e;
+        }
+    }
+
+    // ============== HELPER METHODS ==============
+
+    private BatchResponseDTO replay(IdempotencyRecord record, String endpoint, String requestHash) {
+        if (!record.getEndpoint().equals(endpoint) || !record.getRequestHash().equals(requestHash)) {
+            throw new BusinessRuleException(
+                    String.format("Idempotency-Key %s was already used for a different request",
+                            record.getIdempotencyKey()));
+        }
+        if (record.getStatus() != IdempotencyStatus.COMPLETED) {
+            throw inProgress(record.getIdempotencyKey());
+        }
+        log.info("Replaying stored response for Idempotency-Key {} on {}", record.getIdempotencyKey(), endpoint);
+        return fromJson(record.getResponseBody());
+    }
+
+    /**
+     * Inserts the IN_PROGRESS record in its own transaction so concurrent retries see it.
+     * Returns false if the key was claimed first by another request.
+     */
+    private boolean claim(String idempotencyKey, String endpoint, String requestHash) {
+        try {
+            transaction(TransactionDefinition.PROPAGATION_REQUIRES_NEW).executeWithoutResult(status -> {
+                IdempotencyRecord record = new IdempotencyRecord();
+                record.setIdempotencyKey(idempotencyKey);
+                record.setEndpoint(endpoint);
+                record.setRequestHash(requestHash);
+                record.setStatus(IdempotencyStatus.IN_PROGRESS);
+                // persist, not save: save would merge into a row another request just inserted
+                entityManager.persist(record);
+                entityManager.flush();
+            });
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        } catch (PersistenceException e) {
+            // Primary key violation: the shared EntityManager does not translate the flush error
+            if (e.getCause() instanceof ConstraintViolationException) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes over the record if it is an IN_PROGRESS claim for the same request whose lease ran
+     * out. Returns false if it is not, or if another retry took it over first.
+     */
+    private boolean reclaimIfExpired(IdempotencyRecord record, String endpoint, String requestHash) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiredBefore = now.minusSeconds(leaseSeconds);
+        if (record.getStatus() != IdempotencyStatus.IN_PROGRESS
+                || !record.getCreatedTimestamp().isBefore(expiredBefore)) {
+            return false;
+        }
+        Integer reclaimed = transaction(TransactionDefinition.PROPAGATION_REQUIRES_NEW).execute(status ->
+                idempotencyRecordRepository.reclaimExpired(
+                        record.getIdempotencyKey(), endpoint, requestHash, expiredBefore, now));
+        if (reclaimed == null || reclaimed == 0) {
+            return false;
+        }
+        log.warn("Reclaimed Idempotency-Key {} on {}: previous claim from {} expired",
+                record.getIdempotencyKey(), endpoint, record.getCreatedTimestamp());
+        return true;
+    }
+
+    private void release(String idempotencyKey) {
+        transaction(TransactionDefinition.PROPAGATION_REQUIRES_NEW).executeWithoutResult(status ->
+                idempotencyRecordRepository.findById(idempotencyKey)
+                        .filter(record -> record.getStatus() == IdempotencyStatus.IN_PROGRESS)
+                        .ifPresent(idempotencyRecordRepository::delete));
+    }
+
+    private TransactionTemplate transaction(int propagation) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(propagation);
+        return template;
+    }
+
+    private BusinessRuleException inProgress(String idempotencyKey) {
+        return new BusinessRuleException(
+                String.format("A request with Idempotency-Key %s is still being processed", idempotencyKey));
+    }
+
+    private String hash(BatchRegistrationDTO request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(toJson(request).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private BatchResponseDTO fromJson(String json) {
+        try {
+            return objectMapper.readValue(json, BatchResponseDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read stored registration response", e);
+        }
+    }
+}
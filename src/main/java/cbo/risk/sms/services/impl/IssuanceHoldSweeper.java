@@ -0,0 +1,82 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.models.BookParent;
+import cbo.risk.sms.repositories.BookParentRepository;
+import cbo.risk.sms.repositories.CheckBookRepository;
+import cbo.risk.sms.repositories.CpoRepository;
+import cbo.risk.sms.repositories.PassBookRepository;
+import cbo.risk.sms.utils.SerialRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Releases reservations that were never confirmed, so an abandoned hold cannot block the
+ * items behind it. Each table is swept with one UPDATE. CPO and PassBook batches issue
+ * from a cursor, so their cursors are moved back to the lowest released serial.
+ */
+@Component
+public class IssuanceHoldSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(IssuanceHoldSweeper.class);
+
+    @Autowired
+    private CheckBookRepository checkBookRepository;
+
+    @Autowired
+    private CpoRepository cpoRepository;
+
+    @Autowired
+    private PassBookRepository passBookRepository;
+
+    @Autowired
+    private BookParentRepository bookParentRepository;
+
+    @Autowired
+    private CpoPrefetchBuffer cpoPrefetchBuffer;
+
+    @Scheduled(fixedDelayString = "${sms.issuance.hold.sweep-interval-ms:30000}")
+    @Transactional
+    public void releaseExpiredHolds() {
+        LocalDateTime now = LocalDateTime.now();
+
+        int checkBooks = checkBookRepository.releaseExpiredHolds(now);
+        int cpoBatches = rewindCursors(cpoRepository.releaseExpiredHolds(now));
+        int passBookBatches = rewindCursors(passBookRepository.releaseExpiredHolds(now));
+
+        if (checkBooks > 0 || cpoBatches > 0 || passBookBatches > 0) {
+            log.info("Released expired holds: {} CheckBooks, CPOs in {} batches, PassBooks in {} batches",
+                    checkBooks, cpoBatches, passBookBatches);
+        }
+    }
+
+    // ============== HELPER METHODS ==============
+
+    // Each row is a batch id and the lowest serial value released in it
+    private int rewindCursors(List<Object[]> released) {
+        for (Object[] row : released) {
+            Long parentId = ((Number) row[0]).longValue();
+            long lowestValue = ((Number) row[1]).longValue();
+
+            BookParent parent = bookParentRepository.findById(parentId).orElse(null);
+            if (parent == null) {
+                continue;
+            }
+            SerialRange serials = SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+            bookParentRepository.rewindIssueCursor(parentId, lowestValue - serials.getStart());
+
+            // Buffered CPOs were read past the released one; start the branch over from the cursor
+            if (parent.getParentBookType() == ParentBookType.CPO) {
+                cpoPrefetchBuffer.invalidate(parent.getBranchId());
+            }
+        }
+        return released.size();
+    }
+}
@@ -0,0 +1,58 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import cbo.risk.sms.services.IssuanceLaneService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * One fair lock per (branch, book type, subtype). Concurrent issues for the same lane queue
+ * here instead of on BookParent row locks, and the database only ever sees one issue per
+ * lane at a time. The number of lanes is bounded by branches times book types, so locks
+ * are created on first use and kept.
+ */
+@Service
+public class IssuanceLaneServiceImpl implements IssuanceLaneService {
+
+    private static final Logger log = LoggerFactory.getLogger(IssuanceLaneServiceImpl.class);
+
+    // How long an issue waits for its lane before giving up
+    @Value("${sms.issuance.lane-wait-seconds:30}")
+    private long laneWaitSeconds;
+
+    private final Map<String, ReentrantLock> lanes = new ConcurrentHashMap<>();
+
+    @Override
+    public <T> T issue(String branchId, ParentBookType parentBookType, Object subtype, Supplier<T> issuance) {
+        String lane = branchId + "|" + parentBookType + "|" + subtype;
+        ReentrantLock lock = lanes.computeIfAbsent(lane, key -> new ReentrantLock(true));
+
+        boolean acquired;
+        try {
+            acquired = lock.tryLock(laneWaitSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessRuleException("Issue request was interrupted while waiting, please retry");
+        }
+        if (!acquired) {
+            log.warn("Timed out waiting for issuance lane {} ({} queued)", lane, lock.getQueueLength());
+            throw new BusinessRuleException(
+                    String.format("Branch %s is busy issuing %s, please retry", branchId, parentBookType));
+        }
+
+        try {
+            return issuance.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
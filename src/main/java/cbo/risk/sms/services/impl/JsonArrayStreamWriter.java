@@ -0,0 +1,66 @@
+package cbo.risk.sms.services.impl;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Writes a stream of rows to the response as one JSON array, element by element, so nothing
+ * but the current row is held in memory. Used by the /stream listings together with
+ * repository Streams, which read the rows through a database cursor.
+ */
+@Component
+public class JsonArrayStreamWriter {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Rows written between flushes of the response; the first row is always flushed right away
+    @Value("${sms.streaming.flush-every:500}")
+    private int flushEvery;
+
+    private ObjectWriter writer;
+
+    @PostConstruct
+    void init() {
+        // Flushing is done here in batches, not after every value
+        writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Maps each row and writes it as the next array element. The mapper is also where callers
+     * detach the entity they are done with. Returns the number of rows written.
+     */
+    public <E, D> long write(OutputStream out, Stream<E> rows, Function<E, D> mapper) throws IOException {
+        long written = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            // The servlet container owns the response stream
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+
+            Iterator<E> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, mapper.apply(iterator.next()));
+                written++;
+                if (written == 1 || written % flushEvery == 0) {
+                    generator.flush();
+                }
+            }
+
+            generator.writeEndArray();
+        }
+        return written;
+    }
+}
@@ -0,0 +1,288 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.dtos.BatchRegistrationDTO;
+import cbo.risk.sms.dtos.BatchResponseDTO;
+import cbo.risk.sms.dtos.ManifestImportResultDTO;
+import cbo.risk.sms.dtos.ManifestRowResultDTO;
+import cbo.risk.sms.enums.*;
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import cbo.risk.sms.services.BookParentService;
+import cbo.risk.sms.services.ManifestImportService;
+import cbo.risk.sms.utils.SerialRange;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Reads the first sheet of an XLSX manifest with POI's event (SAX) API and registers each
+ * row as it is parsed, so memory stays flat however long the manifest is.
+ *
+ * The first row holds column names, matched case-insensitively and ignoring spaces, e.g.
+ * "Parent Book Type", "Start Serial", "End Serial", "Num Of Pad", "Check Book Type",
+ * "Check Book Leave Type", "Pass Book Type", "Pass Book Category", "Branch Id",
+ * "Sub Process Id", "Process Id", "Storage Mode". Serials should be text cells so that
+ * leading zeros survive.
+ */
+@Service
+public class ManifestImportServiceImpl implements ManifestImportService {
+
+    private static final Logger log = LoggerFactory.getLogger(ManifestImportServiceImpl.class);
+
+    private static final List<String> REQUIRED_COLUMNS = List.of(
+            "parentbooktype", "startserial", "endserial", "branchid", "subprocessid", "processid");
+
+    @Autowired
+    private BookParentService bookParentService;
+
+    @Autowired
+    private Validator validator;
+
+    @Override
+    public ManifestImportResultDTO importManifest(MultipartFile file, String createdBy, String createdById) {
+        ManifestImportResultDTO result = new ManifestImportResultDTO();
+        result.setFileName(file.getOriginalFilename());
+
+        Path tempFile = null;
+        OPCPackage pkg = null;
+        try {
+            // A file-backed package is read lazily; opening from a stream would buffer it all
+            tempFile = Files.createTempFile("manifest-", ".xlsx");
+            file.transferTo(tempFile);
+            pkg = OPCPackage.open(tempFile.toFile(), PackageAccess.READ);
+
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new BusinessRuleException("Manifest has no sheets");
+            }
+
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), null, strings,
+                        new ManifestRowHandler(result, createdBy, createdById), new DataFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (IOException | OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new BusinessRuleException("Could not read XLSX manifest: " + e.getMessage());
+        } finally {
+            if (pkg != null) {
+                // Read-only packages are released with revert(); close() would try to save
+                pkg.revert();
+            }
+            deleteQuietly(tempFile);
+        }
+
+        log.info("Imported manifest {}: {} rows, {} registered, {} failed",
+                result.getFileName(), result.getTotalRows(), result.getRegistered(), result.getFailed());
+        return result;
+    }
+
+    // ============== HELPER METHODS ==============
+
+    private ManifestRowResultDTO registerRow(int rowNumber, Map<String, String> values,
+                                             String createdBy, String createdById) {
+        ManifestRowResultDTO row = new ManifestRowResultDTO();
+        row.setRowNumber(rowNumber);
+        row.setStartSerial(values.get("startserial"));
+        row.setEndSerial(values.get("endserial"));
+
+        try {
+            BatchRegistrationDTO dto = toRegistration(values, createdBy, createdById);
+            row.setParentBookType(dto.getParentBookType().name());
+
+            Set<ConstraintViolation<BatchRegistrationDTO>> violations = validator.validate(dto);
+            if (!violations.isEmpty()) {
+                throw new BusinessRuleException(violations.stream()
+                        .map(ConstraintViolation::getMessage)
+                        .sorted()
+                        .collect(Collectors.joining("; ")));
+            }
+
+            // Each registration runs in its own transaction, so one bad row does not undo the others
+            BatchResponseDTO response = switch (dto.getParentBookType()) {
+                case CHECK_BOOK -> bookParentService.registerCheckBookBatch(dto);
+                case CPO -> bookParentService.registerCpoBatch(dto);
+                case PASS_BOOK -> bookParentService.registerPassBookBatch(dto);
+            };
+            row.setSuccess(true);
+            row.setParentId(response.getParentId());
+            row.setChildrenCreated(response.getChildrenCreated());
+            row.setMessage(response.getMessage());
+        } catch (RuntimeException e) {
+            row.setSuccess(false);
+            row.setMessage(e.getMessage());
+        }
+        return row;
+    }
+
+    private BatchRegistrationDTO toRegistration(Map<String, String> values, String createdBy, String createdById) {
+        BatchRegistrationDTO dto = new BatchRegistrationDTO();
+        ParentBookType parentBookType = parseParentBookType(values.get("parentbooktype"));
+        dto.setParentBookType(parentBookType);
+        dto.setBookType(values.getOrDefault("booktype", parentBookType.name()));
+        dto.setStartSerial(values.get("startserial"));
+        dto.setEndSerial(values.get("endserial"));
+
+        if (values.containsKey("numofpad")) {
+            dto.setNumOfPad(Integer.parseInt(values.get("numofpad")));
+        } else {
+            SerialRange serials = SerialRange.tryParse(dto.getStartSerial(), dto.getEndSerial());
+            dto.setNumOfPad(serials != null ? Math.toIntExact(serials.size()) : null);
+        }
+
+        if (values.containsKey("checkbooktype")) {
+            dto.setCheckBookType(CheckBookType.valueOf(toEnumName(values.get("checkbooktype"))));
+        }
+        if (values.containsKey("checkbookleavetype")) {
+            String leaves = values.get("checkbookleavetype");
+            dto.setCheckBookLeaveType(leaves.chars().allMatch(Character::isDigit)
+                    ? CheckBookLeaveType.fromLeaves(Integer.parseInt(leaves))
+                    : CheckBookLeaveType.fromString(leaves));
+        }
+        if (values.containsKey("passbooktype")) {
+            dto.setPassBookType(PassBookType.valueOf(toEnumName(values.get("passbooktype"))));
+        }
+        if (values.containsKey("passbookcategory")) {
+            dto.setPassBookCategory(PassBookCategory.valueOf(toEnumName(values.get("passbookcategory"))));
+        }
+        if (values.containsKey("storagemode")) {
+            dto.setStorageMode(StorageMode.valueOf(toEnumName(values.get("storagemode"))));
+        }
+
+        dto.setBranchId(values.get("branchid"));
+        dto.setSubProcessId(values.get("subprocessid"));
+        dto.setProcessId(values.get("processid"));
+        dto.setCreatedBy(createdBy);
+        dto.setCreatedById(createdById);
+        dto.setLastUpdatedBy(createdBy);
+        dto.setLastUpdatedById(createdById);
+        return dto;
+    }
+
+    // Accepts CHECK_BOOK, CheckBook, Check Book, CPO, PASSBOOK, ...
+    private ParentBookType parseParentBookType(String value) {
+        if (value != null) {
+            String normalized = normalize(value);
+            for (ParentBookType type : ParentBookType.values()) {
+                if (normalize(type.name()).equals(normalized)) {
+                    return type;
+                }
+            }
+        }
+        throw new BusinessRuleException("Unknown parent book type: " + value);
+    }
+
+    private String toEnumName(String value) {
+        return value.trim().toUpperCase().replace(' ', '_').replace('-', '_');
+    }
+
+    // Lower case letters and digits only: "Start Serial" -> "startserial"
+    private static String normalize(String value) {
+        StringBuilder normalized = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete temporary manifest {}", file, e);
+        }
+    }
+
+    /**
+     * Receives the sheet one cell at a time; only the current row is held in memory
+     */
+    private class ManifestRowHandler implements SheetContentsHandler {
+
+        private final ManifestImportResultDTO result;
+        private final String createdBy;
+        private final String createdById;
+
+        private final Map<Integer, String> columnNames = new HashMap<>();
+        private final Map<String, String> values = new HashMap<>();
+        private int currentRow;
+        private int currentColumn;
+
+        private ManifestRowHandler(ManifestImportResultDTO result, String createdBy, String createdById) {
+            this.result = result;
+            this.createdBy = createdBy;
+            this.createdById = createdById;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentRow = rowNum;
+            currentColumn = -1;
+            values.clear();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            currentColumn = cellReference != null ? new CellReference(cellReference).getCol() : currentColumn + 1;
+            if (formattedValue == null || formattedValue.isBlank()) {
+                return;
+            }
+            if (currentRow == 0) {
+                columnNames.put(currentColumn, normalize(formattedValue));
+            } else {
+                String name = columnNames.get(currentColumn);
+                if (name != null) {
+                    values.put(name, formattedValue.trim());
+                }
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (rowNum == 0) {
+                List<String> missing = REQUIRED_COLUMNS.stream()
+                        .filter(column -> !columnNames.containsValue(column))
+                        .collect(Collectors.toList());
+                if (!missing.isEmpty()) {
+                    throw new BusinessRuleException("Manifest header is missing columns: " + missing);
+                }
+                return;
+            }
+            if (!values.isEmpty()) {
+                result.addResult(registerRow(rowNum + 1, values, createdBy, createdById));
+            }
+        }
+    }
+}
@@ -12,21 +12,32 @@ import cbo.risk.sms.repositories.BookParentRepository;
 import cbo.risk.sms.repositories.PassBookRepository;
 import cbo.risk.sms.repositories.RequestPassBookRepository;
 import cbo.risk.sms.services.PassBookService;
+import cbo.risk.sms.utils.KeysetCursor;
+import cbo.risk.sms.utils.SerialRange;
 import lombok.RequiredArgsConstructor;
 import org.modelmapper.ModelMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cglib.core.Local;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -34,10 +45,23 @@ public class PassBookServiceImpl implements PassBookService {
 
     private static final Logger log = LoggerFactory.getLogger(PassBookServiceImpl.class);
 
+    private static final int MAX_BULK_RECEIVE = 1000;
+
+    // How long a reserved item is held for its teller before the sweeper releases it
+    @Value("${sms.issuance.hold.ttl-seconds:300}")
+    private long holdTtlSeconds;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
     private final PassBookRepository passBookRepository;
     private final BookParentRepository bookParentRepository;
     private final ModelMapper modelMapper;
     private final RequestPassBookRepository requestPassBookRepository;
+    private final SequentialIssuancePolicy sequentialIssuancePolicy;
+    private final JsonArrayStreamWriter jsonArrayStreamWriter;
+    private final CompressedBatchInventory compressedBatchInventory;
+    private final BookParentUsage bookParentUsage;
 
     @Transactional
     public ResponseDTO<RequestPassBookDTO> issueAvailablePassBook(RequestPassBookDTO request) {
@@ -49,7 +73,14 @@ public class PassBookServiceImpl implements PassBookService {
 
         // 1. Find next available passbook
         PassBook availablePassBook = findAndReserveNextAvailablePassBook(request);
-        System.out.println(1);
+        return issueClaimedPassBook(availablePassBook, request);
+    }
+
+    /**
+     * Records the issue of an item already claimed by this transaction: the RequestPassBook row,
+     * the item's issue fields and the parent counter.
+     */
+    private ResponseDTO<RequestPassBookDTO> issueClaimedPassBook(PassBook availablePassBook, RequestPassBookDTO request) {
         // 2. Create request record
         RequestPassBook requestPassBook = new RequestPassBook();
         requestPassBook.setPassBookId(availablePassBook.getId());
@@ -69,10 +100,8 @@ public class PassBookServiceImpl implements PassBookService {
         requestPassBook.setIssuedDate(LocalDateTime.now());
         requestPassBook.setModifiedTimestamp(LocalDateTime.now());
         requestPassBook.setSubProcessId(request.getSubProcessId());
-        System.out.println(2);
         RequestPassBook savedRequest =
                 requestPassBookRepository.save(requestPassBook);
-        System.out.println(3);
         // 3. Update passbook status
         availablePassBook.setIssuedById(request.getIssuedById());
         availablePassBook.setIssuedBy(request.getIssuedBy());
@@ -85,13 +114,8 @@ public class PassBookServiceImpl implements PassBookService {
         availablePassBook.setCreatedTimestamp(LocalDateTime.now());
         availablePassBook.setIssuedDate(LocalDateTime.now());
         availablePassBook.setModifiedTimestamp(LocalDateTime.now());
-        System.out.println(4);
         passBookRepository.save(availablePassBook);
-        System.out.println(5);
-        BookParent parent = availablePassBook.getBookParent();
-        parent.setUsed(parent.getUsed() + 1);
-        parent.setLastIssuedChild(availablePassBook.getId());
-        bookParentRepository.save(parent);
+        bookParentUsage.increment(availablePassBook.getBookParent());
 
         log.info("PassBook issued - Request ID: {}, PassBook ID: {}, Serial: {}",
                 savedRequest.getId(),
@@ -100,6 +124,159 @@ public class PassBookServiceImpl implements PassBookService {
 
         return createIssueResponse(savedRequest, availablePassBook);
     }
+
+    /**
+     * First step of a two-phase issue: holds the branch's next PassBook for the teller until
+     * confirmPassBookReservation or until the hold expires. Held PassBooks are skipped by every
+     * other issue, and expired holds are released by IssuanceHoldSweeper.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<PassBookDTO> reserveAvailablePassBook(RequestPassBookDTO request) {
+        if (request.getIssuedById() == null || request.getIssuedById().isBlank()) {
+            throw new BusinessRuleException("issuedById is required to reserve a PassBook");
+        }
+        BookParent parent = bookParentRepository.findAvailablePassBookParent(
+                        request.getBranchId(), request.getPassBookType().name(), ParentBookType.PASS_BOOK)
+                .orElseThrow(() -> new BusinessRuleException(
+                        String.format("No available PassBooks found for branch %s", request.getBranchId())));
+        if (parent.isCompressed()) {
+            // The bitmap cannot give a position back, so compressed batches issue directly
+            throw new BusinessRuleException("PassBooks of compressed batches cannot be reserved, issue them directly");
+        }
+        PassBook availablePassBook = claimNextPassBook(parent.getId())
+                .orElseThrow(() -> new BusinessRuleException(
+                        String.format("No available PassBooks found for branch %s", request.getBranchId())));
+
+        availablePassBook.setHeldUntil(LocalDateTime.now().plusSeconds(holdTtlSeconds));
+        availablePassBook.setHeldById(request.getIssuedById());
+        PassBook held = passBookRepository.save(availablePassBook);
+        log.info("PassBook {} reserved for {} until {}", held.getId(), held.getHeldById(), held.getHeldUntil());
+
+        ResponseDTO<PassBookDTO> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(convertToDTO(held));
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("PassBook reserved for %d seconds", holdTtlSeconds));
+        return responseDTO;
+    }
+
+    /**
+     * Second step of a two-phase issue: issues a PassBook the same teller reserved, as long as
+     * the hold has not expired
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<RequestPassBookDTO> confirmPassBookReservation(Long id, RequestPassBookDTO request) {
+        if (passBookRepository.confirmHold(id, request.getIssuedById(), LocalDateTime.now()) == 0) {
+            throw new BusinessRuleException(
+                    String.format("PassBook %d is not reserved by %s or the reservation has expired",
+                            id, request.getIssuedById()));
+        }
+        PassBook availablePassBook = passBookRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("PassBook", "id", id));
+        return issueClaimedPassBook(availablePassBook, request);
+    }
+    /**
+     * Issues the next quantity PassBooks of the branch's active batch to one customer: one parent
+     * lock, one batched insert of the RequestPassBook rows and one update of the parent counter.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<List<RequestPassBookDTO>> issueAvailablePassBooks(RequestPassBookDTO request, int quantity) {
+        if (quantity < 1) {
+            throw new BusinessRuleException("Quantity must be at least 1");
+        }
+        log.info("Issuing {} PassBooks for branch: {}, account: {}, issued by: {}",
+                quantity, request.getBranchId(), request.getAccountNumber(), request.getCreatedBy());
+
+        BookParent parent = bookParentRepository.findAvailablePassBookParent(
+                        request.getBranchId(), request.getPassBookType().name(), ParentBookType.PASS_BOOK)
+                .flatMap(active -> bookParentRepository.findByIdForUpdate(active.getId()))
+                .orElseThrow(() -> new BusinessRuleException(
+                        String.format("No available PassBooks found for branch %s", request.getBranchId())));
+        List<PassBook> passBooks = claimPassBooks(parent, request, quantity);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<RequestPassBook> requestPassBooks = new ArrayList<>(passBooks.size());
+        for (PassBook passBook : passBooks) {
+            RequestPassBook requestPassBook = new RequestPassBook();
+            requestPassBook.setPassBookId(passBook.getId());
+            requestPassBook.setPassBookCategory(passBook.getPassBookCategory());
+            requestPassBook.setPassBookType(passBook.getPassBookType());
+            requestPassBook.setSerialNum(passBook.getSerialNumber());
+            requestPassBook.setBranchId(request.getBranchId());
+            requestPassBook.setAccountNumber(request.getAccountNumber());
+            requestPassBook.setProcessId(request.getProcessId());
+            requestPassBook.setSubProcessId(request.getSubProcessId());
+            requestPassBook.setIssuedById(request.getIssuedById());
+            requestPassBook.setIssuedBy(request.getIssuedBy());
+            requestPassBook.setLastUpdatedById(request.getLastUpdatedById());
+            requestPassBook.setLastUpdatedBy(request.getLastUpdatedBy());
+            requestPassBook.setCreatedBy(request.getCreatedBy());
+            requestPassBook.setCreatedById(request.getCreatedById());
+            requestPassBook.setCreatedTimestamp(now);
+            requestPassBook.setIssuedDate(now);
+            requestPassBook.setModifiedTimestamp(now);
+            requestPassBooks.add(requestPassBook);
+
+            passBook.setIssuedById(request.getIssuedById());
+            passBook.setIssuedBy(request.getIssuedBy());
+            passBook.setLastUpdatedBy(request.getLastUpdatedBy());
+            passBook.setLastUpdatedById(request.getLastUpdatedById());
+            passBook.setIssuedDate(now);
+            passBook.setModifiedTimestamp(now);
+        }
+        // Sequence ids, so Hibernate sends these as JDBC batches
+        List<RequestPassBook> saved = requestPassBookRepository.saveAll(requestPassBooks);
+        passBookRepository.saveAll(passBooks);
+        bookParentUsage.increment(parent, passBooks.size());
+
+        List<RequestPassBookDTO> issued = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            issued.add(createIssueResponse(saved.get(i), passBooks.get(i)).getResult());
+        }
+        log.info("{} PassBooks issued from parent {}: {} to {}", issued.size(), parent.getId(),
+                passBooks.get(0).getSerialNumber(), passBooks.get(passBooks.size() - 1).getSerialNumber());
+
+        ResponseDTO<List<RequestPassBookDTO>> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(issued);
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("%d PassBooks issued successfully", issued.size()));
+        return responseDTO;
+    }
+    /**
+     * Takes the next quantity unissued PassBooks of the locked parent, all or nothing
+     */
+    private List<PassBook> claimPassBooks(BookParent parent, RequestPassBookDTO request, int quantity) {
+        if (parent.getAvailablePads() < quantity) {
+            throw new BusinessRuleException(
+                    String.format("Only %d PassBooks left in the active batch for branch %s, %d requested",
+                            parent.getAvailablePads(), request.getBranchId(), quantity));
+        }
+
+        List<PassBook> passBooks = new ArrayList<>(quantity);
+        if (parent.isCompressed()) {
+            for (int i = 0; i < quantity; i++) {
+                passBooks.add(materializeNextPassBook(parent.getId(), request));
+            }
+            return passBooks;
+        }
+
+        SerialRange serials = SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+        if (parent.issueCursor() < serials.size()) {
+            passBooks.addAll(passBookRepository
+                    .findByBookParentIdAndIssuedDateIsNullAndHeldUntilIsNullAndSerialValueGreaterThanEqualOrderBySerialValueAsc(
+                            parent.getId(), serials.getStart() + parent.issueCursor(), PageRequest.of(0, quantity)));
+        }
+        if (passBooks.size() < quantity) {
+            throw new BusinessRuleException(
+                    String.format("Only %d PassBooks left in the active batch for branch %s, %d requested",
+                            passBooks.size(), request.getBranchId(), quantity));
+        }
+        PassBook last = passBooks.get(passBooks.size() - 1);
+        parent.advanceIssueCursor(serials.offsetOf(last.getSerialNumber()), last.getId());
+        return passBooks;
+    }
     private ResponseDTO<RequestPassBookDTO> createIssueResponse(
             RequestPassBook requestPassBook,
             PassBook passBook) {
@@ -131,23 +308,13 @@ responseDTO.setMessage("PassBook issued successfully");
                 request.getBranchId(), request.getPassBookType().name(), ParentBookType.PASS_BOOK);
         if(availableParent.isPresent()) {
 
-        List<PassBook> passBooks = passBookRepository
-                .findByBranchIdOrderBySerialNumberAsc(request.getBranchId());
-
-
-
-        passBooks.sort(Comparator.comparingInt(this::extractPassBookNumber));
-
-        for (PassBook passBook : passBooks) {
-
-            // Available = not yet issued
-            if (passBook.getIssuedDate() == null) {
+        if (availableParent.get().isCompressed()) {
+            return materializeNextPassBook(availableParent.get().getId(), request);
+        }
 
-                // Sequential rule
-                if (isSequentiallyIssuable(passBook, passBooks)) {
-                    return passBook;
-                }
-            }
+        Optional<PassBook> next = claimNextPassBook(availableParent.get().getId());
+        if (next.isPresent()) {
+            return next.get();
         }
         }
 
@@ -155,24 +322,67 @@ responseDTO.setMessage("PassBook issued successfully");
                 String.format("No available PassBooks found for branch %s",
                         request.getBranchId()));
     }
-    private int extractPassBookNumber(PassBook passBook) {
-        // Examples: pas1, pas10, pas003
-        String serial = passBook.getSerialNumber();
-        return Integer.parseInt(serial.replaceAll("\\D+", ""));
-    }
+    /**
+     * Fetches the PassBook at the parent's issue cursor and moves the cursor past it. Everything
+     * before the cursor is issued or reserved, so the sequential rule holds without loading the branch.
+     */
+    private Optional<PassBook> claimNextPassBook(Long parentId) {
+        BookParent parent = bookParentRepository.findByIdForUpdate(parentId)
+                .orElseThrow(() -> new ResourceNotFoundException("BookParent", "id", parentId));
 
-    private boolean isSequentiallyIssuable(PassBook passBook, List<PassBook> allPassBooks) {
+        SerialRange serials = SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+        if (parent.issueCursor() >= serials.size()) {
+            return Optional.empty();
+        }
 
-        int currentIndex = allPassBooks.indexOf(passBook);
+        // Normally the row at the cursor itself; skips rows issued some other way
+        Optional<PassBook> next = passBookRepository
+                .findFirstByBookParentIdAndIssuedDateIsNullAndHeldUntilIsNullAndSerialValueGreaterThanEqualOrderBySerialValueAsc(
+                        parentId, serials.getStart() + parent.issueCursor());
+        next.ifPresent(passBook ->
+                parent.advanceIssueCursor(serials.offsetOf(passBook.getSerialNumber()), passBook.getId()));
+        return next;
+    }
+    /**
+     * Compressed batches have no PassBook rows until issue time: lock the parent, take its
+     * first unissued position and create the row for that serial.
+     */
+    private PassBook materializeNextPassBook(Long parentId, RequestPassBookDTO request) {
+        BookParent parent = bookParentRepository.findByIdForUpdate(parentId)
+                .orElseThrow(() -> new ResourceNotFoundException("BookParent", "id", parentId));
 
-        // First passbook can always be issued
-        if (currentIndex == 0) {
-            return true;
+        int offset = parent.nextUnissuedOffset();
+        if (offset < 0) {
+            throw new BusinessRuleException(
+                    String.format("No available PassBooks found for branch %s",
+                            request.getBranchId()));
         }
+        parent.markIssued(offset);
 
-        PassBook previousPassBook = allPassBooks.get(currentIndex - 1);
+        SerialRange serials = SerialRange.parse(parent.getStartingSerial(), parent.getEndingSerial());
+        PassBook passBook = newPassBook(parent, serials.serialAt(offset));
 
-        return previousPassBook.getIssuedDate() != null;
+        PassBook saved = passBookRepository.save(passBook);
+        parent.advanceIssueCursor(offset, saved.getId());
+        return saved;
+    }
+
+    // Unsaved PassBook for a serial of a compressed batch; saved when issued, otherwise only mapped to a DTO
+    private PassBook newPassBook(BookParent parent, String serialNumber) {
+        PassBook passBook = new PassBook();
+        passBook.setSerialNumber(serialNumber);
+        passBook.setBookParent(parent);
+        // The parent stores the PassBook type in passCheckType and the category in passBookType
+        passBook.setPassBookType(PassBookType.valueOf(parent.getPassCheckType()));
+        passBook.setPassBookCategory(PassBookCategory.valueOf(parent.getPassBookType()));
+        passBook.setBranchId(parent.getBranchId());
+        passBook.setSubProcessId(parent.getSubProcessId());
+        passBook.setProcessId(parent.getProcessId());
+        passBook.setCreatedBy(parent.getCreatedBy());
+        passBook.setCreatedById(parent.getCreatedById());
+        passBook.setLastUpdatedBy(parent.getLastUpdatedBy());
+        passBook.setLastUpdatedById(parent.getLastUpdatedById());
+        return passBook;
     }
 
     @Override
@@ -294,6 +504,23 @@ responseDTO.setMessage("PassBook issued successfully");
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Same rows as findAll, but read through a cursor and written to out as they arrive.
+     * Each entity is detached once mapped, so memory stays flat however many rows there are.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAll(OutputStream out) throws IOException {
+        try (Stream<PassBook> passBooks = passBookRepository.streamAll()) {
+            long written = jsonArrayStreamWriter.write(out, passBooks, passBook -> {
+                PassBookDTO dto = convertToDTO(passBook);
+                entityManager.detach(passBook);
+                return dto;
+            });
+            log.debug("Streamed {} PassBooks", written);
+        }
+    }
+
     @Override
     public Page<PassBookDTO> findAll(Pageable pageable) {
         log.debug("Fetching PassBooks with pagination");
@@ -301,6 +528,43 @@ responseDTO.setMessage("PassBook issued successfully");
                 .map(this::convertToDTO);
     }
 
+    @Override
+    public KeysetPageDTO<PassBookDTO> scroll(String cursor, Integer size) {
+        int pageSize = KeysetCursor.pageSize(size);
+        List<PassBook> rows = passBookRepository.findByIdGreaterThanOrderByIdAsc(
+                KeysetCursor.decode(cursor, 0L), KeysetCursor.limit(pageSize));
+        return KeysetCursor.page(rows, pageSize, PassBook::getId, this::convertToDTO);
+    }
+
+    @Override
+    public KeysetPageDTO<PassBookDTO> scrollByBranch(String branchId, String status, String cursor, Integer size) {
+        log.debug("Scrolling PassBooks for branch: {} with status: {}", branchId, status);
+        int pageSize = KeysetCursor.pageSize(size);
+        long after = KeysetCursor.decode(cursor, 0L);
+        Pageable limit = KeysetCursor.limit(pageSize);
+
+        List<PassBook> rows = switch (status == null ? "" : status.toLowerCase()) {
+            case "available" -> passBookRepository
+                    .findByBranchIdAndIssuedDateIsNullAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+            case "issued" -> passBookRepository
+                    .findByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNullAndIdGreaterThanOrderByIdAsc(
+                            branchId, after, limit);
+            case "returned" -> passBookRepository
+                    .findByBranchIdAndReturnedDateIsNotNullAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+            default -> passBookRepository.findByBranchIdAndIdGreaterThanOrderByIdAsc(branchId, after, limit);
+        };
+        return KeysetCursor.page(rows, pageSize, PassBook::getId, this::convertToDTO);
+    }
+
+    // Ordered by the numeric serial, which is unique within a batch
+    @Override
+    public KeysetPageDTO<PassBookDTO> scrollByParent(Long parentId, String cursor, Integer size) {
+        int pageSize = KeysetCursor.pageSize(size);
+        List<PassBook> rows = passBookRepository.findByBookParentIdAndSerialValueGreaterThanOrderBySerialValueAsc(
+                parentId, KeysetCursor.decode(cursor, -1L), KeysetCursor.limit(pageSize));
+        return KeysetCursor.page(rows, pageSize, PassBook::getSerialValue, this::convertToDTO);
+    }
+
     @Override
     @Transactional
     public PassBookDTO update(Long id, PassBookUpdateDTO updateDTO) {
@@ -367,7 +631,9 @@ responseDTO.setMessage("PassBook issued successfully");
     public Optional<PassBookDTO> findBySerialNumber(String serialNumber) {
         log.debug("Finding PassBook by serial number: {}", serialNumber);
         return passBookRepository.findBySerialNumber(serialNumber)
-                .map(this::convertToDTO);
+                .map(this::convertToDTO)
+                .or(() -> compressedBatchInventory.findUnissuedParent(serialNumber, ParentBookType.PASS_BOOK)
+                        .map(parent -> convertToDTO(newPassBook(parent, serialNumber))));
     }
 
     @Override
@@ -425,7 +691,7 @@ responseDTO.setMessage("PassBook issued successfully");
 
         // Check sequential issuance rule if part of a parent batch
         if (passBook.getBookParent() != null) {
-            validateSequentialIssuance(passBook);
+            sequentialIssuancePolicy.requirePreviousIssued(passBook.getBookParent(), passBook.getSerialNumber());
         }
 
         passBook.setIssuedDate(LocalDateTime.now());
@@ -437,10 +703,9 @@ responseDTO.setMessage("PassBook issued successfully");
         // Update parent's used count
         if (issued.getBookParent() != null) {
             BookParent parent = issued.getBookParent();
-            parent.setUsed(parent.getUsed() + 1);
+            bookParentUsage.increment(parent);
             parent.setLastUpdatedBy(issuedBy);
             bookParentRepository.save(parent);
-            log.info("Parent used count updated to: {}", parent.getUsed());
         }
 
         log.info("PassBook issued: {}", issued.getId());
@@ -473,14 +738,9 @@ responseDTO.setMessage("PassBook issued successfully");
         // Update parent's used count (decrement)
         if (returned.getBookParent() != null) {
             BookParent parent = returned.getBookParent();
-            parent.setUsed(parent.getUsed() - 1);
-            if (parent.getUsed() < 0) {
-                log.warn("Parent used count became negative, resetting to 0. Parent ID: {}", parent.getId());
-                parent.setUsed(0);
-            }
+            bookParentUsage.decrement(parent);
             parent.setLastUpdatedBy(returnedBy);
             bookParentRepository.save(parent);
-            log.info("Parent used count updated to: {}", parent.getUsed());
         }
 
         log.info("PassBook returned: {}", returned.getId());
@@ -537,20 +797,65 @@ responseDTO.setMessage("PassBook issued successfully");
         passBook.setReceivedById(request.getReceivedById());
 
         PassBook received = passBookRepository.save(passBook);
-        BookParent bookParent =received.getBookParent();
-        bookParent.setUsed(bookParent.getUsed() + 1);
-        bookParent.setLastIssuedChild(passBook.getId());
-        bookParentRepository.save(bookParent);
+        // used was already counted when the passbook was issued
         log.info("PassBook received: {}", received.getId());
 
         return convertToRequestPassBookDTO(received);
     }
 
+    /**
+     * Receives a whole tray of issued PassBooks at once: one query validates every request id,
+     * then two UPDATE statements mark the request rows and their items as received.
+     * Nothing is changed unless every id can be received.
+     */
+    @Override
+    @Transactional
+    public ResponseDTO<List<Long>> receivePassBooks(BulkReceiveDTO receive) {
+        Set<Long> requestIds = new LinkedHashSet<>(receive.getRequestIds());
+        if (requestIds.size() > MAX_BULK_RECEIVE) {
+            throw new BusinessRuleException(
+                    String.format("At most %d PassBooks can be received at once", MAX_BULK_RECEIVE));
+        }
+        log.info("Receiving {} PassBooks by user: {}", requestIds.size(), receive.getReceivedBy());
+
+        Set<Long> rejected = new LinkedHashSet<>(requestIds);
+        rejected.removeAll(requestPassBookRepository.findReceivableIds(requestIds));
+        if (!rejected.isEmpty()) {
+            throw new BusinessRuleException(
+                    "PassBook requests not found, not issued or already received: " + rejected);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int received = requestPassBookRepository.markReceived(
+                requestIds, receive.getReceivedBy(), receive.getReceivedById(), now);
+        if (received != requestIds.size()) {
+            // Another receive got some of them after validation; roll everything back
+            throw new BusinessRuleException("Some PassBooks were received concurrently, please retry");
+        }
+        // Set on managed entities rather than in a bulk UPDATE, so Envers writes a MOD revision
+        // for each item; the updates are flushed in JDBC batches at commit
+        for (PassBook passBook : passBookRepository.findByRequestIds(requestIds)) {
+            passBook.setReceivedDate(now);
+            passBook.setReceivedBy(receive.getReceivedBy());
+            passBook.setReceivedById(receive.getReceivedById());
+            passBook.setLastUpdatedBy(receive.getReceivedBy());
+        }
+
+        log.info("{} PassBooks received by {}", received, receive.getReceivedBy());
+
+        ResponseDTO<List<Long>> responseDTO = new ResponseDTO<>();
+        responseDTO.setResult(new ArrayList<>(requestIds));
+        responseDTO.setStatus(true);
+        responseDTO.setMessage(String.format("%d PassBooks received", received));
+        return responseDTO;
+    }
+
     @Override
     public List<PassBookDTO> findAvailableByBranch(String branchId) {
         log.debug("Finding available PassBooks for branch: {}", branchId);
-        return passBookRepository.findByBranchIdAndIssuedDateIsNull(branchId).stream()
-                .map(this::convertToDTO)
+        return Stream.concat(
+                        passBookRepository.findByBranchIdAndIssuedDateIsNull(branchId).stream().map(this::convertToDTO),
+                        unissuedCompressedPassBooks(branchId))
                 .collect(Collectors.toList());
     }
 
@@ -567,7 +872,8 @@ responseDTO.setMessage("PassBook issued successfully");
         log.debug("Counting PassBooks for branch: {} with status: {}", branchId, status);
         switch (status.toLowerCase()) {
             case "available":
-                return passBookRepository.countByBranchIdAndIssuedDateIsNull(branchId);
+                return passBookRepository.countByBranchIdAndIssuedDateIsNull(branchId)
+                        + compressedBatchInventory.countUnissued(branchId, ParentBookType.PASS_BOOK);
             case "issued":
                 return passBookRepository.countByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNull(branchId);
             case "returned":
@@ -579,7 +885,8 @@ responseDTO.setMessage("PassBook issued successfully");
 
     @Override
     public boolean existsBySerialNumber(String serialNumber) {
-        return passBookRepository.existsBySerialNumber(serialNumber);
+        return passBookRepository.existsBySerialNumber(serialNumber)
+                || compressedBatchInventory.findUnissuedParent(serialNumber, ParentBookType.PASS_BOOK).isPresent();
     }
 
     @Override
@@ -587,9 +894,7 @@ responseDTO.setMessage("PassBook issued successfully");
         log.debug("Finding PassBooks for branch: {} with status: {}", branchId, status);
         switch (status.toLowerCase()) {
             case "available":
-                return passBookRepository.findByBranchIdAndIssuedDateIsNull(branchId).stream()
-                        .map(this::convertToDTO)
-                        .collect(Collectors.toList());
+                return findAvailableByBranch(branchId);
             case "issued":
                 return passBookRepository.findByBranchIdAndIssuedDateIsNotNullAndReturnedDateIsNull(branchId).stream()
                         .map(this::convertToDTO)
@@ -656,49 +961,27 @@ responseDTO.setMessage("PassBook issued successfully");
     // ============== HELPER METHODS ==============
 
     private void validateSerialInRange(String serialNumber, BookParent bookParent) {
-        try {
-            String prefix = bookParent.getStartingSerial().replaceAll("\\d+", "");
-            String serialNumStr = serialNumber.substring(prefix.length());
-            String startNumStr = bookParent.getStartingSerial().substring(prefix.length());
-            String endNumStr = bookParent.getEndingSerial().substring(prefix.length());
-
-            int serialNum = Integer.parseInt(serialNumStr);
-            int startNum = Integer.parseInt(startNumStr);
-            int endNum = Integer.parseInt(endNumStr);
-
-            if (serialNum < startNum || serialNum > endNum) {
-                throw new BusinessRuleException(
-                        String.format("Serial number %s is not in range %s to %s",
-                                serialNumber, bookParent.getStartingSerial(), bookParent.getEndingSerial()));
-            }
-        } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+        SerialRange range = SerialRange.tryParse(bookParent.getStartingSerial(), bookParent.getEndingSerial());
+        if (range == null || !range.matchesFormat(serialNumber)) {
             throw new BusinessRuleException(
                     String.format("Invalid serial number format: %s. Expected format matching parent range: %s-%s",
                             serialNumber, bookParent.getStartingSerial(), bookParent.getEndingSerial()));
         }
-    }
-
-    private void validateSequentialIssuance(PassBook passBook) {
-        BookParent parent = passBook.getBookParent();
-        List<PassBook> allPassBooks = passBookRepository.findByBookParentOrderBySerialNumberAsc(parent);
-
-        int currentIndex = -1;
-        for (int i = 0; i < allPassBooks.size(); i++) {
-            if (allPassBooks.get(i).getSerialNumber().equals(passBook.getSerialNumber())) {
-                currentIndex = i;
-                break;
-            }
+        if (!range.contains(serialNumber)) {
+            throw new BusinessRuleException(
+                    String.format("Serial number %s is not in range %s to %s",
+                            serialNumber, bookParent.getStartingSerial(), bookParent.getEndingSerial()));
         }
+    }
 
-        if (currentIndex > 0) {
-            PassBook previousPassBook = allPassBooks.get(currentIndex - 1);
-            if (previousPassBook.getIssuedDate() == null) {
-                throw new BusinessRuleException(
-                        String.format("Cannot issue serial %s. Previous serial %s must be issued first.",
-                                passBook.getSerialNumber(), previousPassBook.getSerialNumber())
-                );
-            }
-        }
+    // Unissued PassBooks of the branch's compressed batches, which have no rows until they are issued
+    private Stream<PassBookDTO> unissuedCompressedPassBooks(String branchId) {
+        return compressedBatchInventory.findParentsWithUnissued(branchId, ParentBookType.PASS_BOOK).stream()
+                .flatMap(parent -> {
+                    SerialRange serials = compressedBatchInventory.serials(parent);
+                    return compressedBatchInventory.unissuedOffsets(parent)
+                            .mapToObj(offset -> convertToDTO(newPassBook(parent, serials.serialAt(offset))));
+                });
     }
 
     private PassBookDTO convertToDTO(PassBook passBook) {
@@ -730,4 +1013,4 @@ responseDTO.setMessage("PassBook issued successfully");
 
         return dto;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.dtos.BatchRegistrationDTO;
+import cbo.risk.sms.dtos.BatchResponseDTO;
+import cbo.risk.sms.dtos.RegistrationJobDTO;
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.enums.RegistrationJobStatus;
+import cbo.risk.sms.enums.StorageMode;
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import cbo.risk.sms.services.BookParentService;
+import cbo.risk.sms.services.RegistrationJobService;
+import cbo.risk.sms.utils.RegistrationProgress;
+import cbo.risk.sms.utils.SerialRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class RegistrationJobServiceImpl implements RegistrationJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(RegistrationJobServiceImpl.class);
+
+    @Autowired
+    private BookParentService bookParentService;
+
+    @Autowired
+    @Qualifier("registrationExecutor")
+    private ThreadPoolTaskExecutor registrationExecutor;
+
+    // How long finished jobs stay available for polling
+    @Value("${sms.registration.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    private final Map<String, RegistrationJob> jobs = new ConcurrentHashMap<>();
+
+    @Override
+    public RegistrationJobDTO submit(ParentBookType parentBookType, BatchRegistrationDTO registrationDTO) {
+        evictExpiredJobs();
+
+        RegistrationJob job = new RegistrationJob(UUID.randomUUID().toString(), parentBookType,
+                registrationDTO, estimateRows(parentBookType, registrationDTO));
+        jobs.put(job.id, job);
+
+        try {
+            registrationExecutor.execute(() -> run(job));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.id);
+            throw new BusinessRuleException("Too many registration jobs are queued, try again later");
+        }
+
+        log.info("Queued {} registration job {}: {} to {}", parentBookType, job.id,
+                registrationDTO.getStartSerial(), registrationDTO.getEndSerial());
+        return toDTO(job);
+    }
+
+    @Override
+    public Optional<RegistrationJobDTO> findJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(this::toDTO);
+    }
+
+    // ============== HELPER METHODS ==============
+
+    private void run(RegistrationJob job) {
+        job.startedAt = LocalDateTime.now();
+        job.startedNanos = System.nanoTime();
+        job.status = RegistrationJobStatus.RUNNING;
+        RegistrationProgress.attach(job.rowsWritten::set);
+        try {
+            BatchResponseDTO result = switch (job.parentBookType) {
+                case CHECK_BOOK -> bookParentService.registerCheckBookBatch(job.registrationDTO);
+                case CPO -> bookParentService.registerCpoBatch(job.registrationDTO);
+                case PASS_BOOK -> bookParentService.registerPassBookBatch(job.registrationDTO);
+            };
+            job.rowsWritten.set(result.getChildrenCreated());
+            job.result = result;
+            job.finishedNanos = System.nanoTime();
+            job.status = RegistrationJobStatus.COMPLETED;
+            log.info("Registration job {} completed, parent ID: {}", job.id, result.getParentId());
+        } catch (Exception e) {
+            log.error("Registration job {} failed", job.id, e);
+            job.failureReason = e.getMessage();
+            job.finishedNanos = System.nanoTime();
+            job.status = RegistrationJobStatus.FAILED;
+        } finally {
+            RegistrationProgress.detach();
+            job.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private long estimateRows(ParentBookType parentBookType, BatchRegistrationDTO dto) {
+        SerialRange serials = SerialRange.tryParse(dto.getStartSerial(), dto.getEndSerial());
+        if (serials == null || dto.getStorageMode() == StorageMode.COMPRESSED) {
+            return 0;
+        }
+        if (parentBookType == ParentBookType.CHECK_BOOK && dto.getCheckBookLeaveType() != null) {
+            return serials.size() / dto.getCheckBookLeaveType().getNumberOfLeaves();
+        }
+        return serials.size();
+    }
+
+    private void evictExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    private RegistrationJobDTO toDTO(RegistrationJob job) {
+        RegistrationJobDTO dto = new RegistrationJobDTO();
+        dto.setJobId(job.id);
+        dto.setParentBookType(job.parentBookType);
+        dto.setStatus(job.status);
+        dto.setStartSerial(job.registrationDTO.getStartSerial());
+        dto.setEndSerial(job.registrationDTO.getEndSerial());
+        dto.setSubmittedAt(job.submittedAt);
+        dto.setStartedAt(job.startedAt);
+        dto.setFinishedAt(job.finishedAt);
+        dto.setFailureReason(job.failureReason);
+        dto.setResult(job.result);
+
+        long rows = job.rowsWritten.get();
+        dto.setTotalRows(job.totalRows);
+        dto.setRowsWritten(rows);
+
+        if (job.startedAt != null) {
+            long endNanos = job.finishedNanos != 0 ? job.finishedNanos : System.nanoTime();
+            double seconds = (endNanos - job.startedNanos) / 1_000_000_000.0;
+            double rate = seconds > 0 ? rows / seconds : 0;
+            dto.setRowsPerSecond(Math.round(rate));
+            if (job.status == RegistrationJobStatus.RUNNING && rate > 0) {
+                dto.setEtaSeconds(Math.round(Math.max(0, job.totalRows - rows) / rate));
+            }
+        }
+        return dto;
+    }
+
+    /**
+     * Live state of one job; written by the worker thread, read by pollers
+     */
+    private static class RegistrationJob {
+        private final String id;
+        private final ParentBookType parentBookType;
+        private final BatchRegistrationDTO registrationDTO;
+        private final long totalRows;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final AtomicLong rowsWritten = new AtomicLong();
+
+        private volatile RegistrationJobStatus status = RegistrationJobStatus.QUEUED;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile long startedNanos;
+        private volatile long finishedNanos;
+        private volatile String failureReason;
+        private volatile BatchResponseDTO result;
+
+        private RegistrationJob(String id, ParentBookType parentBookType,
+                                BatchRegistrationDTO registrationDTO, long totalRows) {
+            this.id = id;
+            this.parentBookType = parentBookType;
+            this.registrationDTO = registrationDTO;
+            this.totalRows = totalRows;
+        }
+    }
+}
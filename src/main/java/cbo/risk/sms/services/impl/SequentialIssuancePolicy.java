@@ -0,0 +1,165 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import cbo.risk.sms.models.BookParent;
+import cbo.risk.sms.repositories.CheckBookRepository;
+import cbo.risk.sms.repositories.CpoRepository;
+import cbo.risk.sms.repositories.PassBookRepository;
+import cbo.risk.sms.utils.SerialRange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Sequential issuance rule shared by the CheckBook, CPO and PassBook services: within a batch,
+ * an item can only be issued once the item before it has been.
+ *
+ * A position is the serial offset for CPOs and PassBooks and the checkbook index for CheckBooks.
+ * The previous item of a serial is found by offset arithmetic and checked with a single lookup;
+ * only listing the gaps builds a BitSet of the batch's issued positions.
+ */
+@Component
+public class SequentialIssuancePolicy {
+
+    @Autowired
+    private CheckBookRepository checkBookRepository;
+
+    @Autowired
+    private CpoRepository cpoRepository;
+
+    @Autowired
+    private PassBookRepository passBookRepository;
+
+    /**
+     * @throws BusinessRuleException if the item before the serial in its batch is not issued yet
+     */
+    public void requirePreviousIssued(BookParent parent, String serialNumber) {
+        SerialRange serials = SerialRange.tryParse(parent.getStartingSerial(), parent.getEndingSerial());
+        if (serials == null) {
+            return;
+        }
+        int position = positionOf(parent, serials, serialNumber);
+        // The first item, and serials outside the batch (rejected by range validation), have no predecessor
+        if (position <= 0) {
+            return;
+        }
+
+        if (!isIssued(parent, serials, position - 1)) {
+            throw new BusinessRuleException(
+                    String.format("Cannot issue serial %s. Previous serial %s must be issued first.",
+                            serialNumber, serialAt(parent, serials, position - 1)));
+        }
+    }
+
+    /**
+     * Serials of the batch that can be issued now: the first serial of every gap, i.e. each
+     * unissued position whose predecessor is issued, plus the first position if it is unissued.
+     */
+    public List<String> issuableSerials(BookParent parent) {
+        SerialRange serials = SerialRange.tryParse(parent.getStartingSerial(), parent.getEndingSerial());
+        List<String> issuable = new ArrayList<>();
+        if (serials == null) {
+            return issuable;
+        }
+
+        BitSet issued = issuedPositions(parent, serials);
+        int positions = positionCount(parent, serials);
+        int position = issued.nextClearBit(0);
+        while (position < positions) {
+            issuable.add(serialAt(parent, serials, position));
+            int nextIssued = issued.nextSetBit(position);
+            if (nextIssued < 0) {
+                break;
+            }
+            position = issued.nextClearBit(nextIssued);
+        }
+        return issuable;
+    }
+
+    // ============== HELPER METHODS ==============
+
+    /**
+     * Issued positions of the batch. Compressed batches keep them as a bitmap already. For
+     * materialized CPO and PassBook batches every position before the issue cursor is taken
+     * (issued, or held by a reservation), so only serials from the cursor on are read.
+     */
+    private BitSet issuedPositions(BookParent parent, SerialRange serials) {
+        if (parent.isCompressed()) {
+            return BitSet.valueOf(parent.getIssuedPositions());
+        }
+
+        BitSet issued = new BitSet(positionCount(parent, serials));
+        if (parent.getParentBookType() == ParentBookType.CHECK_BOOK) {
+            int leaves = leavesPerCheckBook(parent);
+            for (Long value : checkBookRepository.findIssuedSerialValues(parent.getId(), serials.getStart())) {
+                issued.set(Math.toIntExact((value - serials.getStart()) / leaves));
+            }
+            return issued;
+        }
+
+        int cursor = parent.issueCursor();
+        issued.set(0, cursor);
+        long from = serials.getStart() + cursor;
+        List<Long> values = parent.getParentBookType() == ParentBookType.CPO
+                ? cpoRepository.findIssuedSerialValues(parent.getId(), from)
+                : passBookRepository.findIssuedSerialValues(parent.getId(), from);
+        for (Long value : values) {
+            issued.set(Math.toIntExact(value - serials.getStart()));
+        }
+        return issued;
+    }
+
+    // Compressed batches read their bitmap, materialized ones the (book_parent_id, serialValue) index
+    private boolean isIssued(BookParent parent, SerialRange serials, int position) {
+        if (parent.isCompressed()) {
+            return parent.isIssued(position);
+        }
+        if (parent.getParentBookType() == ParentBookType.CHECK_BOOK) {
+            return checkBookRepository.existsByBookParentIdAndSerialValueAndIssuedDateIsNotNull(
+                    parent.getId(), serials.getStart() + (long) position * leavesPerCheckBook(parent));
+        }
+        // Every CPO and PassBook position before the cursor is issued or held
+        if (position < parent.issueCursor()) {
+            return true;
+        }
+        long value = serials.getStart() + position;
+        return parent.getParentBookType() == ParentBookType.CPO
+                ? cpoRepository.existsByBookParentIdAndSerialValueAndIssuedDateIsNotNull(parent.getId(), value)
+                : passBookRepository.existsByBookParentIdAndSerialValueAndIssuedDateIsNotNull(parent.getId(), value);
+    }
+
+    // Position of the serial in its batch, or -1 if it is not the first serial of an item there
+    private int positionOf(BookParent parent, SerialRange serials, String serialNumber) {
+        long offset = serials.offsetOf(serialNumber);
+        if (offset < 0) {
+            return -1;
+        }
+        if (parent.getParentBookType() != ParentBookType.CHECK_BOOK) {
+            return Math.toIntExact(offset);
+        }
+        int leaves = leavesPerCheckBook(parent);
+        return offset % leaves == 0 ? Math.toIntExact(offset / leaves) : -1;
+    }
+
+    private String serialAt(BookParent parent, SerialRange serials, int position) {
+        if (parent.getParentBookType() == ParentBookType.CHECK_BOOK) {
+            return serials.serialAt((long) position * leavesPerCheckBook(parent));
+        }
+        return serials.serialAt(position);
+    }
+
+    private int positionCount(BookParent parent, SerialRange serials) {
+        if (parent.getParentBookType() == ParentBookType.CHECK_BOOK) {
+            return Math.toIntExact(serials.size() / leavesPerCheckBook(parent));
+        }
+        return Math.toIntExact(serials.size());
+    }
+
+    private int leavesPerCheckBook(BookParent parent) {
+        return parent.getCheckLeaveType().getNumberOfLeaves();
+    }
+}
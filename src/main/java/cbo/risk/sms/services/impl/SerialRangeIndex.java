@@ -0,0 +1,169 @@
+package cbo.risk.sms.services.impl;
+
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import cbo.risk.sms.repositories.BookParentRepository;
+import cbo.risk.sms.utils.SerialRange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of every registered BookParent serial range: one sorted map per serial
+ * prefix, keyed by range start. Registered ranges never overlap, so both point lookups and
+ * overlap checks are a floor lookup plus a short walk, without touching the database.
+ *
+ * Loaded once the application is ready; until then {@link #isLoaded()} is false and
+ * callers fall back to the database.
+ */
+@Component
+public class SerialRangeIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SerialRangeIndex.class);
+
+    @Autowired
+    private BookParentRepository bookParentRepository;
+
+    private final Map<String, NavigableMap<Long, IndexedRange>> rangesByPrefix = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        int indexed = 0;
+        for (Object[] row : bookParentRepository.findAllSerialRanges()) {
+            SerialRange range = SerialRange.tryParse((String) row[1], (String) row[2]);
+            if (range != null) {
+                put((Long) row[0], range);
+                indexed++;
+            }
+        }
+        loaded = true;
+        log.info("Serial range index loaded with {} batches in {} prefixes", indexed, rangesByPrefix.size());
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Indexes a batch being registered right away, so concurrent registrations see it, and
+     * drops it again if the registering transaction rolls back. The overlap check is repeated
+     * under the prefix lock, so two registrations of the same serials cannot both get in.
+     */
+    public void register(Long parentId, SerialRange range) {
+        NavigableMap<Long, IndexedRange> ranges =
+                rangesByPrefix.computeIfAbsent(range.getPrefix(), prefix -> new ConcurrentSkipListMap<>());
+        synchronized (ranges) {
+            List<SerialRange> overlaps = findOverlaps(range);
+            if (!overlaps.isEmpty()) {
+                throw new BusinessRuleException(
+                        String.format("Serial numbers already exist in the system: %s",
+                                overlaps.stream().map(SerialRange::toString).collect(Collectors.joining(", "))));
+            }
+            ranges.put(range.getStart(), new IndexedRange(parentId, range));
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        remove(parentId, range);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Removes a deleted batch once the deleting transaction has committed
+     */
+    public void unregister(Long parentId, SerialRange range) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remove(parentId, range);
+                }
+            });
+        } else {
+            remove(parentId, range);
+        }
+    }
+
+    /**
+     * Id of the batch whose range contains the serial
+     */
+    public Optional<Long> findParentId(String serial) {
+        NavigableMap<Long, IndexedRange> ranges = rangesByPrefix.get(SerialRange.prefixOf(serial));
+        long value = SerialRange.valueOf(serial);
+        if (ranges == null || value < 0) {
+            return Optional.empty();
+        }
+        Map.Entry<Long, IndexedRange> floor = ranges.floorEntry(value);
+        if (floor == null || floor.getValue().range.getEnd() < value) {
+            return Optional.empty();
+        }
+        return Optional.of(floor.getValue().parentId);
+    }
+
+    /**
+     * The parts of registered ranges that overlap the given range, in serial order
+     */
+    public List<SerialRange> findOverlaps(SerialRange requested) {
+        List<SerialRange> overlaps = new ArrayList<>();
+        NavigableMap<Long, IndexedRange> ranges = rangesByPrefix.get(requested.getPrefix());
+        if (ranges == null) {
+            return overlaps;
+        }
+        // Every range starting at or before the requested end, walking back until one ends before its start
+        for (IndexedRange candidate : ranges.headMap(requested.getEnd(), true).descendingMap().values()) {
+            if (candidate.range.getEnd() < requested.getStart()) {
+                break;
+            }
+            SerialRange overlap = requested.intersect(candidate.range);
+            if (overlap != null) {
+                overlaps.add(0, overlap);
+            }
+        }
+        return overlaps;
+    }
+
+    // ============== HELPER METHODS ==============
+
+    private void put(Long parentId, SerialRange range) {
+        rangesByPrefix.computeIfAbsent(range.getPrefix(), prefix -> new ConcurrentSkipListMap<>())
+                .put(range.getStart(), new IndexedRange(parentId, range));
+    }
+
+    private void remove(Long parentId, SerialRange range) {
+        NavigableMap<Long, IndexedRange> ranges = rangesByPrefix.get(range.getPrefix());
+        if (ranges != null) {
+            ranges.computeIfPresent(range.getStart(),
+                    (start, indexed) -> indexed.parentId.equals(parentId) ? null : indexed);
+        }
+    }
+
+    private static class IndexedRange {
+        private final Long parentId;
+        private final SerialRange range;
+
+        private IndexedRange(Long parentId, SerialRange range) {
+            this.parentId = parentId;
+            this.range = range;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package cbo.risk.sms.utils;
+
+import java.util.Set;
+
+/**
+ * Entity types whose Envers insert audit rows are skipped on the current thread, because
+ * the surrounding bulk operation records one range-level audit entry for them instead.
+ */
+public final class BulkAuditContext {
+
+    private static final ThreadLocal<Set<Class<?>>> SUPPRESSED = new ThreadLocal<>();
+
+    private BulkAuditContext() {
+    }
+
+    public static void suppressInserts(Class<?>... entityTypes) {
+        SUPPRESSED.set(Set.of(entityTypes));
+    }
+
+    public static void clear() {
+        SUPPRESSED.remove();
+    }
+
+    public static boolean isInsertSuppressed(Class<?> entityType) {
+        Set<Class<?>> suppressed = SUPPRESSED.get();
+        return suppressed != null && suppressed.contains(entityType);
+    }
+}
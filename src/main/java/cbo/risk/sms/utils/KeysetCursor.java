@@ -0,0 +1,88 @@
+package cbo.risk.sms.utils;
+
+import cbo.risk.sms.dtos.KeysetPageDTO;
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Continuation tokens for keyset pagination. A page is read as "key greater than the last
+ * key of the previous page, ordered by key, limited to size", which an index answers
+ * directly however deep the page is, unlike OFFSET. The token is the last key, Base64
+ * encoded so clients treat it as opaque.
+ */
+public final class KeysetCursor {
+
+    public static final int DEFAULT_SIZE = 100;
+    public static final int MAX_SIZE = 1000;
+
+    private static final String PREFIX = "k:";
+
+    private KeysetCursor() {
+    }
+
+    /**
+     * Last key of the previous page, or start when there is no cursor (the first page)
+     *
+     * @throws BusinessRuleException if the cursor is not one this class produced
+     */
+    public static long decode(String cursor, long start) {
+        if (cursor == null || cursor.isBlank()) {
+            return start;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.startsWith(PREFIX)) {
+                return Long.parseLong(decoded.substring(PREFIX.length()));
+            }
+        } catch (IllegalArgumentException e) {
+            // Falls through to the error below; NumberFormatException is an IllegalArgumentException
+        }
+        throw new BusinessRuleException("Invalid pagination cursor: " + cursor);
+    }
+
+    public static String encode(long key) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Page size within 1 to MAX_SIZE
+     */
+    public static int pageSize(Integer size) {
+        if (size == null) {
+            return DEFAULT_SIZE;
+        }
+        return Math.max(1, Math.min(size, MAX_SIZE));
+    }
+
+    /**
+     * Limit for the page query: one row more than the page, to tell whether another page follows
+     */
+    public static Pageable limit(int pageSize) {
+        return PageRequest.of(0, pageSize + 1);
+    }
+
+    /**
+     * Builds the page from rows read with {@link #limit(int)}
+     */
+    public static <E, D> KeysetPageDTO<D> page(List<E> rows, int pageSize,
+                                               ToLongFunction<E> key, Function<E, D> mapper) {
+        boolean hasNext = rows.size() > pageSize;
+        List<E> content = hasNext ? rows.subList(0, pageSize) : rows;
+
+        KeysetPageDTO<D> page = new KeysetPageDTO<>();
+        page.setContent(content.stream().map(mapper).collect(Collectors.toList()));
+        page.setSize(content.size());
+        page.setHasNext(hasNext);
+        page.setNextCursor(hasNext ? encode(key.applyAsLong(content.get(content.size() - 1))) : null);
+        return page;
+    }
+}
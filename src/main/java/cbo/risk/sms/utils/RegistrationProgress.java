@@ -0,0 +1,34 @@
+package cbo.risk.sms.utils;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Lets batch registration report how many rows it has written so far to whoever runs it
+ * (an asynchronous registration job). Registration on request threads has no listener
+ * attached and reporting is a no-op.
+ */
+public final class RegistrationProgress {
+
+    private static final ThreadLocal<LongConsumer> LISTENER = new ThreadLocal<>();
+
+    private RegistrationProgress() {
+    }
+
+    public static void attach(LongConsumer listener) {
+        LISTENER.set(listener);
+    }
+
+    public static void detach() {
+        LISTENER.remove();
+    }
+
+    /**
+     * @param rowsWritten total rows written by the current registration so far
+     */
+    public static void report(long rowsWritten) {
+        LongConsumer listener = LISTENER.get();
+        if (listener != null) {
+            listener.accept(rowsWritten);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package cbo.risk.sms.utils;
+
+/**
+ * An inclusive run of serials sharing one prefix and zero-padded width,
+ * e.g. CPO0001 to CPO0500.
+ * The ends are parsed once; after that, serials are formatted, compared and turned
+ * into offsets arithmetically, without regex or format-string parsing per serial.
+ */
+public final class SerialRange {
+
+    // Longest digit run that always fits in a long
+    private static final int MAX_DIGITS = 18;
+
+    private final String prefix;
+    private final int width;
+    private final long start;
+    private final long end;
+
+    private SerialRange(String prefix, int width, long start, long end) {
+        this.prefix = prefix;
+        this.width = width;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Parses a range whose ends share a prefix followed by digits, ending at or after the start
+     *
+     * @throws IllegalArgumentException if the serials do not form such a range
+     */
+    public static SerialRange parse(String startSerial, String endSerial) {
+        SerialRange range = tryParse(startSerial, endSerial);
+        if (range == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid serial range %s to %s: both ends need the same prefix followed by digits, " +
+                            "and the end must not be before the start", startSerial, endSerial));
+        }
+        return range;
+    }
+
+    /**
+     * Same as {@link #parse(String, String)} but returns null for an invalid range
+     */
+    public static SerialRange tryParse(String startSerial, String endSerial) {
+        if (startSerial == null || endSerial == null) {
+            return null;
+        }
+        int prefixLength = prefixLength(startSerial);
+        if (prefixLength(endSerial) != prefixLength
+                || !startSerial.regionMatches(0, endSerial, 0, prefixLength)) {
+            return null;
+        }
+        long start = digitsValue(startSerial, prefixLength);
+        long end = digitsValue(endSerial, prefixLength);
+        if (start < 0 || end < start) {
+            return null;
+        }
+        return new SerialRange(startSerial.substring(0, prefixLength),
+                startSerial.length() - prefixLength, start, end);
+    }
+
+    /**
+     * Prefix of a serial: everything before its trailing digits (e.g., "CPO" from "CPO0001")
+     */
+    public static String prefixOf(String serial) {
+        return serial.substring(0, prefixLength(serial));
+    }
+
+    /**
+     * Value of the trailing digits of a serial, or -1 if it has none (or too many to fit a long)
+     */
+    public static long valueOf(String serial) {
+        return digitsValue(serial, prefixLength(serial));
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long size() {
+        return end - start + 1;
+    }
+
+    /**
+     * Serial at the given zero-based position in the range
+     */
+    public String serialAt(long offset) {
+        if (offset < 0 || offset >= size()) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " outside range of size " + size());
+        }
+        return format(start + offset);
+    }
+
+    /**
+     * Formats a value with this range's prefix, zero-padded to its width
+     */
+    public String format(long value) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        int prefixLength = prefix.length();
+        char[] chars = new char[prefixLength + Math.max(width, digits)];
+        prefix.getChars(0, prefixLength, chars, 0);
+
+        int pos = chars.length;
+        long v = value;
+        do {
+            chars[--pos] = (char) ('0' + (v % 10));
+            v /= 10;
+        } while (v > 0);
+        while (pos > prefixLength) {
+            chars[--pos] = '0';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * True if the serial has this range's prefix followed only by digits. Padding is not
+     * compared, so "CPO7" and "CPO0007" are the same serial.
+     */
+    public boolean matchesFormat(String serial) {
+        return serial != null
+                && prefixLength(serial) == prefix.length()
+                && serial.startsWith(prefix)
+                && digitsValue(serial, prefix.length()) >= 0;
+    }
+
+    /**
+     * Zero-based position of the serial in the range, or -1 if it is not part of it
+     */
+    public long offsetOf(String serial) {
+        if (serial == null || prefixLength(serial) != prefix.length() || !serial.startsWith(prefix)) {
+            return -1;
+        }
+        long value = digitsValue(serial, prefix.length());
+        if (value < start || value > end) {
+            return -1;
+        }
+        return value - start;
+    }
+
+    public boolean contains(String serial) {
+        return offsetOf(serial) >= 0;
+    }
+
+    public boolean overlaps(SerialRange other) {
+        return prefix.equals(other.prefix) && start <= other.end && other.start <= end;
+    }
+
+    /**
+     * The serials shared with another range, or null if they do not overlap
+     */
+    public SerialRange intersect(SerialRange other) {
+        if (!overlaps(other)) {
+            return null;
+        }
+        return new SerialRange(prefix, width, Math.max(start, other.start), Math.min(end, other.end));
+    }
+
+    /**
+     * "CPO0001" for a single serial, "CPO0001 to CPO0500" otherwise
+     */
+    @Override
+    public String toString() {
+        return start == end ? format(start) : format(start) + " to " + format(end);
+    }
+
+    private static int prefixLength(String serial) {
+        int i = serial.length();
+        while (i > 0 && isDigit(serial.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    private static long digitsValue(String serial, int from) {
+        int length = serial.length() - from;
+        if (length <= 0 || length > MAX_DIGITS) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < serial.length(); i++) {
+            char c = serial.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // ASCII only; Character.isDigit would also accept other Unicode digits
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,111 @@
+package cbo.risk.sms.services;
+
+import cbo.risk.sms.dtos.BatchRegistrationDTO;
+import cbo.risk.sms.dtos.RequestCheckBookDTO;
+import cbo.risk.sms.enums.CheckBookLeaveType;
+import cbo.risk.sms.enums.CheckBookType;
+import cbo.risk.sms.enums.ParentBookType;
+import cbo.risk.sms.exceptions.BusinessRuleException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Several tellers issue from the same branch at once; every checkbook must be handed out exactly once.
+ */
+@SpringBootTest
+class CheckBookIssuanceConcurrencyTests {
+
+	private static final int CHECK_BOOKS = 20;
+	private static final int TELLERS = 8;
+
+	@Autowired
+	private BookParentService bookParentService;
+
+	@Autowired
+	private CheckBookService checkBookService;
+
+	@Test
+	void concurrentTellersNeverIssueTheSameCheckBook() throws Exception {
+		String branchId = "TEST-" + UUID.randomUUID();
+		registerBatch(branchId);
+
+		ExecutorService tellers = Executors.newFixedThreadPool(TELLERS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<List<Long>>> results = new ArrayList<>();
+		for (int i = 0; i < TELLERS; i++) {
+			results.add(tellers.submit(() -> {
+				start.await();
+				List<Long> issued = new ArrayList<>();
+				while (true) {
+					try {
+						issued.add(checkBookService.issueAvailableCheckBook(issueRequest(branchId))
+								.getResult().getCheckBookId());
+					} catch (BusinessRuleException e) {
+						// Nothing left that another teller has not already claimed
+						return issued;
+					}
+				}
+			}));
+		}
+		start.countDown();
+
+		List<Long> issued = new ArrayList<>();
+		for (Future<List<Long>> result : results) {
+			issued.addAll(result.get(2, TimeUnit.MINUTES));
+		}
+		tellers.shutdown();
+
+		assertEquals(CHECK_BOOKS, issued.size(), "every checkbook issued");
+		assertEquals(CHECK_BOOKS, new HashSet<>(issued).size(), "no checkbook issued twice");
+		assertThrows(BusinessRuleException.class, () -> checkBookService.issueAvailableCheckBook(issueRequest(branchId)));
+	}
+
+	private void registerBatch(String branchId) {
+		// Random letter prefix so the serials do not collide with earlier runs
+		String prefix = new Random().ints(8, 'A', 'Z' + 1)
+				.collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+				.toString();
+		int leaves = CheckBookLeaveType.TEN_LEAVES.getNumberOfLeaves();
+
+		BatchRegistrationDTO dto = new BatchRegistrationDTO();
+		dto.setParentBookType(ParentBookType.CHECK_BOOK);
+		dto.setBookType("CHECKBOOK");
+		dto.setStartSerial(prefix + "000001");
+		dto.setEndSerial(prefix + String.format("%06d", CHECK_BOOKS * leaves));
+		dto.setNumOfPad(CHECK_BOOKS * leaves);
+		dto.setCheckBookType(CheckBookType.CONVENTIONAL);
+		dto.setCheckBookLeaveType(CheckBookLeaveType.TEN_LEAVES);
+		dto.setBranchId(branchId);
+		dto.setSubProcessId("TEST");
+		dto.setProcessId("TEST");
+		dto.setCreatedBy("test");
+		dto.setCreatedById("test");
+		dto.setLastUpdatedBy("test");
+		dto.setLastUpdatedById("test");
+		bookParentService.registerCheckBookBatch(dto);
+	}
+
+	private RequestCheckBookDTO issueRequest(String branchId) {
+		RequestCheckBookDTO request = new RequestCheckBookDTO();
+		request.setBranchId(branchId);
+		request.setCheckBookType(CheckBookType.CONVENTIONAL);
+		request.setCheckBookLeaveType(CheckBookLeaveType.TEN_LEAVES.getNumberOfLeaves());
+		request.setAccountNumber("1000000000");
+		request.setSubProcessId("TEST");
+		request.setProcessId("TEST");
+		request.setCreatedBy("teller");
+		request.setCreatedById("teller");
+		request.setLastUpdatedBy("teller");
+		request.setLastUpdatedById("teller");
+		request.setIssuedBy("teller");
+		request.setIssuedById("teller");
+		return request;
+	}
+}
@@ -0,0 +1,84 @@
+package cbo.risk.sms.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the regex / String.format serial handling the services used before
+ * with SerialRange, for generating and parsing a batch of serials.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ *           -Dexec.mainClass=cbo.risk.sms.utils.SerialRangeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialRangeBenchmark {
+
+    @Param({"1000", "100000"})
+    private int batchSize;
+
+    private String startSerial;
+    private String endSerial;
+    private String[] serials;
+
+    @Setup
+    public void setUp() {
+        startSerial = "CPO0000001";
+        endSerial = "CPO" + String.format("%07d", batchSize);
+        SerialRange range = SerialRange.parse(startSerial, endSerial);
+        serials = new String[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            serials[i] = range.serialAt(i);
+        }
+    }
+
+    @Benchmark
+    public void generateLegacy(Blackhole blackhole) {
+        String prefix = startSerial.replaceAll("\\d+", "");
+        int width = startSerial.length() - prefix.length();
+        int start = Integer.parseInt(startSerial.replaceAll("[^0-9]", ""));
+        int end = Integer.parseInt(endSerial.replaceAll("[^0-9]", ""));
+        for (int value = start; value <= end; value++) {
+            blackhole.consume(prefix + String.format("%0" + width + "d", value));
+        }
+    }
+
+    @Benchmark
+    public void generateSerialRange(Blackhole blackhole) {
+        SerialRange range = SerialRange.parse(startSerial, endSerial);
+        for (long value = range.getStart(); value <= range.getEnd(); value++) {
+            blackhole.consume(range.format(value));
+        }
+    }
+
+    @Benchmark
+    public void parseLegacy(Blackhole blackhole) {
+        for (String serial : serials) {
+            blackhole.consume(Integer.parseInt(serial.replaceAll("\\D+", "")));
+        }
+    }
+
+    @Benchmark
+    public void parseSerialRange(Blackhole blackhole) {
+        for (String serial : serials) {
+            blackhole.consume(SerialRange.valueOf(serial));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SerialRangeBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
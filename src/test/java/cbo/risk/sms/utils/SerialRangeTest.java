@@ -0,0 +1,168 @@
+package cbo.risk.sms.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parsing, formatting and offset arithmetic of serial ranges, without a Spring context.
+ */
+class SerialRangeTest {
+
+	@Test
+	void parsesPrefixWidthAndBounds() {
+		SerialRange range = SerialRange.parse("CPO0001", "CPO0500");
+
+		assertEquals("CPO", range.getPrefix());
+		assertEquals(4, range.getWidth());
+		assertEquals(1, range.getStart());
+		assertEquals(500, range.getEnd());
+		assertEquals(500, range.size());
+	}
+
+	@Test
+	void tryParseRejectsMalformedRanges() {
+		assertNull(SerialRange.tryParse(null, "CPO0010"));
+		assertNull(SerialRange.tryParse("CPO0001", null));
+		// No trailing digits
+		assertNull(SerialRange.tryParse("CPO", "CPO"));
+		assertNull(SerialRange.tryParse("", "CPO0010"));
+		// Different prefixes, including prefixes of different length
+		assertNull(SerialRange.tryParse("CPO0001", "CPX0010"));
+		assertNull(SerialRange.tryParse("CPO0001", "CP0010"));
+		// Digits inside the prefix are part of it, so these prefixes differ
+		assertNull(SerialRange.tryParse("A1B0001", "A2B0010"));
+		// End before start
+		assertNull(SerialRange.tryParse("CPO0010", "CPO0001"));
+	}
+
+	@Test
+	void parseThrowsWhereTryParseReturnsNull() {
+		assertThrows(IllegalArgumentException.class, () -> SerialRange.parse("CPO0010", "CPO0001"));
+		assertThrows(IllegalArgumentException.class, () -> SerialRange.parse("CPO0001", "PB0010"));
+		assertThrows(IllegalArgumentException.class, () -> SerialRange.parse("CPO", "CPO"));
+	}
+
+	@Test
+	void mixedWidthEndsTakeTheWidthOfTheStart() {
+		SerialRange range = SerialRange.parse("CPO7", "CPO0010");
+
+		assertEquals(1, range.getWidth());
+		assertEquals(4, range.size());
+		assertEquals("CPO7", range.serialAt(0));
+		// Values wider than the range's width are written out in full, never truncated
+		assertEquals("CPO10", range.serialAt(3));
+		// Padding is not compared, so both spellings are the same serial
+		assertEquals(3, range.offsetOf("CPO10"));
+		assertEquals(3, range.offsetOf("CPO0010"));
+	}
+
+	@Test
+	void singleSerialRange() {
+		SerialRange range = SerialRange.parse("PB000042", "PB000042");
+
+		assertEquals(1, range.size());
+		assertEquals("PB000042", range.serialAt(0));
+		assertEquals("PB000042", range.toString());
+	}
+
+	@Test
+	void formatZeroPadsToTheWidth() {
+		SerialRange range = SerialRange.parse("CPO0001", "CPO0500");
+
+		assertEquals("CPO0000", range.format(0));
+		assertEquals("CPO0007", range.format(7));
+		assertEquals("CPO0500", range.format(500));
+		assertEquals("CPO9999", range.format(9999));
+		assertEquals("CPO12345", range.format(12345));
+	}
+
+	@Test
+	void serialAtIsZeroPaddedAndBounded() {
+		SerialRange range = SerialRange.parse("CPO0001", "CPO0500");
+
+		assertEquals("CPO0001", range.serialAt(0));
+		assertEquals("CPO0010", range.serialAt(9));
+		assertEquals("CPO0500", range.serialAt(499));
+		assertThrows(IndexOutOfBoundsException.class, () -> range.serialAt(-1));
+		assertThrows(IndexOutOfBoundsException.class, () -> range.serialAt(500));
+	}
+
+	@Test
+	void offsetOfIsMinusOneOutsideTheRange() {
+		SerialRange range = SerialRange.parse("CPO0100", "CPO0199");
+
+		assertEquals(0, range.offsetOf("CPO0100"));
+		assertEquals(99, range.offsetOf("CPO0199"));
+		assertEquals(-1, range.offsetOf("CPO0099"));
+		assertEquals(-1, range.offsetOf("CPO0200"));
+		assertEquals(-1, range.offsetOf("PB0150"));
+		assertEquals(-1, range.offsetOf("XCPO0150"));
+		assertEquals(-1, range.offsetOf("CPO"));
+		assertEquals(-1, range.offsetOf(null));
+		assertTrue(range.contains("CPO0150"));
+		assertFalse(range.contains("CPO0200"));
+	}
+
+	@Test
+	void matchesFormatIgnoresPaddingButNotPrefix() {
+		SerialRange range = SerialRange.parse("CPO0001", "CPO0500");
+
+		assertTrue(range.matchesFormat("CPO0001"));
+		assertTrue(range.matchesFormat("CPO9"));
+		assertTrue(range.matchesFormat("CPO99999"));
+		assertFalse(range.matchesFormat("CPO"));
+		assertFalse(range.matchesFormat("PB0001"));
+		assertFalse(range.matchesFormat(null));
+	}
+
+	@Test
+	void overlapsAndIntersectAtTheBoundaries() {
+		SerialRange range = SerialRange.parse("CPO0100", "CPO0199");
+
+		// Sharing only the last serial
+		SerialRange touchingEnd = SerialRange.parse("CPO0199", "CPO0300");
+		assertTrue(range.overlaps(touchingEnd));
+		assertTrue(touchingEnd.overlaps(range));
+		assertEquals("CPO0199", range.intersect(touchingEnd).toString());
+
+		// Sharing only the first serial
+		SerialRange touchingStart = SerialRange.parse("CPO0001", "CPO0100");
+		assertEquals("CPO0100", range.intersect(touchingStart).toString());
+
+		// Adjacent on either side, nothing shared
+		SerialRange before = SerialRange.parse("CPO0001", "CPO0099");
+		SerialRange after = SerialRange.parse("CPO0200", "CPO0300");
+		assertFalse(range.overlaps(before));
+		assertFalse(range.overlaps(after));
+		assertNull(range.intersect(before));
+		assertNull(range.intersect(after));
+
+		// Contained and containing
+		SerialRange inner = SerialRange.parse("CPO0120", "CPO0130");
+		assertEquals("CPO0120 to CPO0130", range.intersect(inner).toString());
+		assertEquals("CPO0120 to CPO0130", inner.intersect(range).toString());
+
+		// Same digits under another prefix never overlap
+		SerialRange otherPrefix = SerialRange.parse("PB0100", "PB0199");
+		assertFalse(range.overlaps(otherPrefix));
+		assertNull(range.intersect(otherPrefix));
+	}
+
+	@Test
+	void valueOfReadsUpToEighteenDigits() {
+		assertEquals(7, SerialRange.valueOf("CPO0007"));
+		assertEquals(0, SerialRange.valueOf("CPO0"));
+		assertEquals(-1, SerialRange.valueOf("CPO"));
+		assertEquals(999_999_999_999_999_999L, SerialRange.valueOf("CPO" + "9".repeat(18)));
+		// A 19th digit could overflow a long
+		assertEquals(-1, SerialRange.valueOf("CPO" + "1".repeat(19)));
+		assertEquals("CPO", SerialRange.prefixOf("CPO" + "1".repeat(19)));
+	}
+
+	@Test
+	void rangesWithMoreThanEighteenDigitsAreRejected() {
+		assertNull(SerialRange.tryParse("CPO" + "0".repeat(18) + "1", "CPO" + "0".repeat(18) + "9"));
+		assertNotNull(SerialRange.tryParse("CPO" + "0".repeat(17) + "1", "CPO" + "0".repeat(17) + "9"));
+	}
+}